@@ -0,0 +1,52 @@
+package com.terheyden.prefs.bench;
+
+import com.terheyden.prefs.With;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The blank checks Prefs runs for every field on every save / load.
+ * Run with {@code -prof gc} - gc.alloc.rate.norm should be ~0 B/op for everything but {@link #trimIsEmpty()},
+ * which is what {@code With} used to do.
+ *
+ * On Java 21+, add {@code -jvmArgsAppend -Djmh.executor=VIRTUAL} to run the benchmark threads as virtual threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WithBench {
+
+    // An unnamed @Pref, a named one, and a padded one (the worst case for trim()).
+    @Param({ "", "lastDir", "  lastDir  " })
+    public String name;
+
+    @Benchmark
+    public String staticIfBlank() {
+        return With.ifBlank(name, "field");
+    }
+
+    @Benchmark
+    public String fluentIfBlank() {
+        return With.str(name).ifBlank("field");
+    }
+
+    @Benchmark
+    public boolean trimIsEmpty() {
+        return name == null || name.trim().isEmpty();
+    }
+}
@@ -0,0 +1,234 @@
+package com.terheyden.prefs.soak;
+
+import com.terheyden.prefs.Prefs;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+/**
+ * Soak / load test for {@link Prefs} - N threads doing a mix of load, save, and flushAllPrefs
+ * over M bound settings objects, against the real default Preferences store, for a while.
+ * Prints throughput and latency percentiles per interval, then for the whole run.
+ *
+ * The user and system roots are pointed at a temp dir, so this never touches your real prefs,
+ * and it measures real file I/O rather than some in-memory stand-in.
+ *
+ * Run: mvn compile exec:java -Dexec.args="threads=8 objects=32 seconds=60 write=0.3"
+ * See {@link SoakConfig} for all options.
+ */
+public class PrefsSoak {
+
+    private static final String[] OPS = { "load", "save", "flush" };
+    private static final int LOAD = 0;
+    private static final int SAVE = 1;
+    private static final int FLUSH = 2;
+
+    // Track 1 microsecond to 1 minute, in nanos, at 3 significant digits.
+    private static final long MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final SoakConfig config;
+    private final SoakWorkload workload;
+    private final Recorder[] recorders = new Recorder[OPS.length];
+    private final Histogram[] totals = new Histogram[OPS.length];
+    private final List<SoakSettings> bound = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    public PrefsSoak(SoakConfig config) {
+        this.config = config;
+        this.workload = new SoakWorkload(config);
+
+        for (int op = 0; op < OPS.length; op++) {
+            recorders[op] = new Recorder(1000, MAX_NANOS, 3);
+            totals[op] = new Histogram(1000, MAX_NANOS, 3);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        SoakConfig config = new SoakConfig(args);
+
+        // Must happen before anything touches java.util.prefs.
+        Path prefsDir = Files.createTempDirectory("prefs-soak");
+        System.setProperty("java.util.prefs.userRoot", new File(prefsDir.toFile(), "user").getPath());
+        System.setProperty("java.util.prefs.systemRoot", new File(prefsDir.toFile(), "system").getPath());
+
+        System.out.println("Prefs soak: " + config);
+        System.out.println("Prefs dir:  " + prefsDir);
+
+        try {
+            new PrefsSoak(config).run();
+        } finally {
+            // The JDK syncs the prefs store from its own shutdown hook, and fails if the dir is gone by then.
+            // Flush now, so every file it needs already exists, and delete them all only after that hook.
+            Preferences.userRoot().flush();
+            Preferences.systemRoot().flush();
+            deleteOnExit(prefsDir);
+        }
+    }
+
+    public void run() throws Exception {
+
+        // Create and load every object up front, so all the paths exist before the threads start.
+        for (int i = 0; i < config.objects; i++) {
+            SoakSettings settings = (SoakSettings) SoakSettings.PATH_CLASSES[i % config.paths].getDeclaredConstructor().newInstance();
+            Prefs.load(settings);
+            bound.add(settings);
+        }
+
+        CountDownLatch done = new CountDownLatch(config.threads);
+        for (int t = 0; t < config.threads; t++) {
+
+            long seed = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    work(new Random(seed));
+                } finally {
+                    done.countDown();
+                }
+            }, "prefs-soak-" + t);
+
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(config.seconds);
+        long lastReport = start;
+
+        printHeader();
+
+        // Rates use the measured time between reports, since sleeps can overrun.
+        while (running && System.nanoTime() < end) {
+            long sleep = Math.min(TimeUnit.SECONDS.toNanos(config.reportSeconds), end - System.nanoTime());
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, sleep));
+
+            long now = System.nanoTime();
+            report(TimeUnit.NANOSECONDS.toSeconds(now - start), now - lastReport);
+            lastReport = now;
+        }
+
+        running = false;
+        done.await();
+
+        System.out.println();
+        System.out.println(String.format("Totals over %.1fs", (lastReport - start) / 1e9));
+        printHeader();
+        for (int op = 0; op < OPS.length; op++) {
+            printRow("all", OPS[op], totals[op], lastReport - start);
+        }
+    }
+
+    /**
+     * Prefs prints and carries on after most failures itself, so there's nothing to count -
+     * anything that does get out is a bug or a broken setup, and stops the run.
+     */
+    private void work(Random rand) {
+
+        double total = config.readRatio + config.writeRatio + config.flushRatio;
+
+        while (running) {
+
+            SoakSettings settings = bound.get(rand.nextInt(bound.size()));
+            double pick = rand.nextDouble() * total;
+
+            try {
+
+                if (pick < config.readRatio) {
+
+                    synchronized (settings) {
+                        long t0 = System.nanoTime();
+                        Prefs.load(settings);
+                        record(LOAD, t0);
+                    }
+
+                } else if (pick < config.readRatio + config.writeRatio) {
+
+                    synchronized (settings) {
+                        workload.mutate(settings, rand);
+                        long t0 = System.nanoTime();
+                        Prefs.save(settings);
+                        record(SAVE, t0);
+                    }
+
+                } else {
+
+                    long t0 = System.nanoTime();
+                    Prefs.flushAllPrefs();
+                    record(FLUSH, t0);
+                }
+
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                running = false;
+            }
+        }
+    }
+
+    private void record(int op, long startNanos) {
+        recorders[op].recordValue(Math.min(MAX_NANOS, System.nanoTime() - startNanos));
+    }
+
+    private void report(long elapsedSecs, long intervalNanos) {
+
+        for (int op = 0; op < OPS.length; op++) {
+            Histogram interval = recorders[op].getIntervalHistogram();
+            totals[op].add(interval);
+            printRow(elapsedSecs + "s", OPS[op], interval, intervalNanos);
+        }
+    }
+
+    private static void printHeader() {
+        System.out.println(String.format("%6s %-6s %10s %10s %10s %10s %10s %10s",
+            "time", "op", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us"));
+    }
+
+    private static void printRow(String time, String op, Histogram hist, long intervalNanos) {
+
+        double secs = intervalNanos / 1e9;
+        System.out.println(String.format("%6s %-6s %10d %10.0f %10.1f %10.1f %10.1f %10.1f",
+            time,
+            op,
+            hist.getTotalCount(),
+            secs > 0 ? hist.getTotalCount() / secs : 0,
+            hist.getValueAtPercentile(50) / 1000.0,
+            hist.getValueAtPercentile(99) / 1000.0,
+            hist.getValueAtPercentile(99.9) / 1000.0,
+            hist.getMaxValue() / 1000.0));
+    }
+
+    /**
+     * Delete the dir and everything in it when the JVM exits - after all shutdown hooks have run.
+     * Exit deletes go in reverse order, so registering each dir before its contents empties it first.
+     */
+    private static void deleteOnExit(Path dir) throws IOException {
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                dir.toFile().deleteOnExit();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                file.toFile().deleteOnExit();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
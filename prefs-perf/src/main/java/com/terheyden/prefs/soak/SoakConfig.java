@@ -0,0 +1,73 @@
+package com.terheyden.prefs.soak;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Soak test settings, parsed from "name=value" args, e.g. "threads=8 seconds=60 write=0.2".
+ */
+public class SoakConfig {
+
+    /** Worker threads. */
+    public final int threads;
+    /** Bound settings objects, spread across the paths. */
+    public final int objects;
+    /** Distinct preference paths, 1 to {@link SoakSettings#PATH_CLASSES}.length. */
+    public final int paths;
+    /** How long to run. */
+    public final int seconds;
+    /** How often to print interval stats. */
+    public final int reportSeconds;
+    /** Relative weights of load / save / flushAllPrefs operations. */
+    public final double readRatio;
+    public final double writeRatio;
+    public final double flushRatio;
+    /** Length of each String value written. */
+    public final int valueSize;
+    /** Max entries in each collection field. */
+    public final int entries;
+
+    public SoakConfig(String... args) {
+
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+
+            int eq = arg.indexOf('=');
+            if (eq < 1) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        threads = Integer.parseInt(opts.getOrDefault("threads", "4"));
+        objects = Integer.parseInt(opts.getOrDefault("objects", "16"));
+        paths = Integer.parseInt(opts.getOrDefault("paths", String.valueOf(SoakSettings.PATH_CLASSES.length)));
+        seconds = Integer.parseInt(opts.getOrDefault("seconds", "30"));
+        reportSeconds = Integer.parseInt(opts.getOrDefault("report", "5"));
+        readRatio = Double.parseDouble(opts.getOrDefault("read", "0.8"));
+        writeRatio = Double.parseDouble(opts.getOrDefault("write", "0.19"));
+        flushRatio = Double.parseDouble(opts.getOrDefault("flush", "0.01"));
+        valueSize = Integer.parseInt(opts.getOrDefault("valueSize", "32"));
+        entries = Integer.parseInt(opts.getOrDefault("entries", "100"));
+
+        if (paths < 1 || paths > SoakSettings.PATH_CLASSES.length) {
+            throw new IllegalArgumentException("paths must be 1 to " + SoakSettings.PATH_CLASSES.length + ": " + paths);
+        }
+
+        if (threads < 1 || objects < 1 || seconds < 1 || reportSeconds < 1 || valueSize < 1 || entries < 1) {
+            throw new IllegalArgumentException("threads, objects, seconds, report, valueSize, and entries must be positive.");
+        }
+
+        if (readRatio < 0 || writeRatio < 0 || flushRatio < 0 || readRatio + writeRatio + flushRatio <= 0) {
+            throw new IllegalArgumentException("read, write, and flush ratios must be >= 0, and not all 0.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "threads=%d objects=%d paths=%d seconds=%d report=%d read=%.3f write=%.3f flush=%.3f valueSize=%d entries=%d",
+            threads, objects, paths, seconds, reportSeconds, readRatio, writeRatio, flushRatio, valueSize, entries);
+    }
+}
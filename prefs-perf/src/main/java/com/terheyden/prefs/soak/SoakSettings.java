@@ -0,0 +1,54 @@
+package com.terheyden.prefs.soak;
+
+import com.terheyden.prefs.Pref;
+import com.terheyden.prefs.PrefSettings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The settings the soak test binds, modeled on AppSettings and SettingsCustomPath in the prefs tests.
+ * Paths are fixed per class by {@link PrefSettings}, so each path gets a subclass that only sets the path,
+ * and inherits the fields.
+ */
+public class SoakSettings {
+
+    public static final Class<?>[] PATH_CLASSES = { Path0.class, Path1.class, Path2.class, Path3.class };
+
+    @Pref(isGlobal = true, name = "license", defaultVal = "UNLICENSED")
+    public String sysLicense;
+
+    @Pref
+    public String lastDir;
+
+    @Pref(isGlobal = true)
+    public int timesRan;
+
+    @Pref
+    public Set<String> cache = new HashSet<>();
+
+    @Pref
+    public Map<String, String> map = new HashMap<>();
+
+    @Pref
+    public ArrayList<String> alist = new ArrayList<>();
+
+    @PrefSettings(path = "/com/terheyden/prefs/soak/path0")
+    public static class Path0 extends SoakSettings {
+    }
+
+    @PrefSettings(path = "/com/terheyden/prefs/soak/path1")
+    public static class Path1 extends SoakSettings {
+    }
+
+    @PrefSettings(path = "/com/terheyden/prefs/soak/path2")
+    public static class Path2 extends SoakSettings {
+    }
+
+    @PrefSettings(path = "/com/terheyden/prefs/soak/path3")
+    public static class Path3 extends SoakSettings {
+    }
+}
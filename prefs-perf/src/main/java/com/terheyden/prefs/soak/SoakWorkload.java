@@ -0,0 +1,57 @@
+package com.terheyden.prefs.soak;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Makes random changes to a {@link SoakSettings} object before it's saved,
+ * the way an app would: bump a counter, change a string, and churn the collections.
+ */
+public class SoakWorkload {
+
+    private static final char[] CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final SoakConfig config;
+
+    public SoakWorkload(SoakConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Caller must hold the object's lock.
+     */
+    public void mutate(SoakSettings settings, Random rand) {
+
+        settings.timesRan++;
+        settings.lastDir = "/" + randomStr(rand);
+        churn(settings.cache, rand);
+
+        Map<String, String> map = settings.map;
+        if (map.size() >= config.entries) {
+            map.remove(map.keySet().iterator().next());
+        }
+        map.put("key" + rand.nextInt(config.entries * 2), randomStr(rand));
+
+        churn(settings.alist, rand);
+    }
+
+    private void churn(Collection<String> coll, Random rand) {
+
+        if (coll.size() >= config.entries) {
+            coll.remove(coll.iterator().next());
+        }
+
+        coll.add(randomStr(rand));
+    }
+
+    private String randomStr(Random rand) {
+
+        char[] chars = new char[config.valueSize];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = CHARS[rand.nextInt(CHARS.length)];
+        }
+
+        return new String(chars);
+    }
+}
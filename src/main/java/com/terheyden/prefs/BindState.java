@@ -0,0 +1,50 @@
+package com.terheyden.prefs;
+
+import com.terheyden.prefs.util.WeakIdentityHashMap;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.prefs.Preferences;
+
+/**
+ * What {@link Prefs} remembers about an object it has bound, between calls to save and load.
+ * Held weakly, so it goes away with the bound object.
+ */
+class BindState {
+
+    private static final WeakIdentityHashMap<Object, BindState> states = new WeakIdentityHashMap<>();
+
+    /**
+     * For {@link Pref#deltaLog()} fields - a copy of the collection as it was last persisted,
+     * which we diff against to figure out what to append to the log.
+     */
+    final Map<Field, Object> deltaBases = new HashMap<>();
+
+    /**
+     * For {@link PrefSettings#skipUnchanged()} - a hash of the raw stored value each field was last loaded from
+     * or saved as. See {@link #hash(String)}.
+     */
+    final Map<Field, Long> valueHashes = new HashMap<>();
+
+    /**
+     * For {@link PrefSettings#multiProcess()} - each node's save stamp as of our last load or save.
+     * If it's moved on, another process has saved since.
+     */
+    final Map<Preferences, Long> nodeStamps = new HashMap<>();
+
+    /**
+     * Length plus String hash - Strings cache their hash, so this is usually free for values
+     * the Preferences store hands back unchanged.
+     */
+    static long hash(String val) {
+        return ((long) val.length() << 32) | (val.hashCode() & 0xffffffffL);
+    }
+
+    /**
+     * Lazy lookup of the state for a bound obj. Creates if not found.
+     */
+    static BindState of(Object bindObj) {
+        return states.computeIfAbsent(bindObj, obj -> new BindState());
+    }
+}
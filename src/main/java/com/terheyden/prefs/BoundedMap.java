@@ -0,0 +1,151 @@
+package com.terheyden.prefs;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map that holds at most a fixed number of entries, dropping them by {@link Eviction} policy.
+ * Bound to {@code @Pref(maxEntries = ..)} Map fields by {@link Prefs#load(Object)}.
+ *
+ * Not thread-safe, like the LinkedHashMap it extends.
+ */
+public class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // When each key was added, for TTL eviction only.
+    private final Map<K, Long> addedAt;
+
+    /**
+     * @param maxEntries max size, or 0 for no limit (not allowed with {@link Eviction#LRU})
+     * @param eviction what to drop first
+     * @param ttlMillis for {@link Eviction#TTL}, how long entries live
+     */
+    public BoundedMap(int maxEntries, Eviction eviction, long ttlMillis) {
+        super(16, 0.75f, eviction == Eviction.LRU);
+
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries can't be negative: " + maxEntries);
+        }
+
+        if (eviction == Eviction.LRU && maxEntries == 0) {
+            throw new IllegalArgumentException("LRU eviction needs a maxEntries");
+        }
+
+        if (eviction == Eviction.TTL && ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL eviction needs a positive ttlMillis: " + ttlMillis);
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.addedAt = eviction == Eviction.TTL ? new HashMap<>() : null;
+    }
+
+    @Override
+    public V put(K key, V val) {
+
+        if (addedAt != null) {
+            addedAt.put(key, System.currentTimeMillis());
+        }
+
+        return super.put(key, val);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        // HashMap.putAll() skips put(), so we'd miss the timestamps.
+        map.forEach(this::put);
+    }
+
+    @Override
+    public V remove(Object key) {
+
+        if (addedAt != null) {
+            addedAt.remove(key);
+        }
+
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+
+        if (addedAt != null) {
+            addedAt.clear();
+        }
+
+        super.clear();
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+
+        if (maxEntries > 0 && size() > maxEntries) {
+
+            if (addedAt != null) {
+                addedAt.remove(eldest.getKey());
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * For TTL eviction, drop everything older than the TTL. Does nothing for other policies.
+     * {@link Prefs} calls this on load and save.
+     */
+    public void evictExpired() {
+
+        if (addedAt == null) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        Iterator<Map.Entry<K, Long>> times = addedAt.entrySet().iterator();
+
+        while (times.hasNext()) {
+
+            Map.Entry<K, Long> time = times.next();
+
+            // Also tidy up after keys removed some other way, e.g. through keySet().
+            if (time.getValue() < cutoff || !containsKey(time.getKey())) {
+                super.remove(time.getKey());
+                times.remove();
+            }
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * When each key was added, for TTL eviction - so they can be saved. Null for other policies.
+     */
+    Map<K, Long> getAddedAt() {
+        return addedAt;
+    }
+
+    /**
+     * Restore saved add times, for TTL eviction.
+     */
+    void setAddedAt(Map<K, Long> times) {
+
+        if (addedAt == null) {
+            return;
+        }
+
+        times.forEach((key, time) -> {
+            if (containsKey(key)) {
+                addedAt.put(key, time);
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.terheyden.prefs;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * A set that holds at most a fixed number of elements, dropping them by {@link Eviction} policy.
+ * Bound to {@code @Pref(maxEntries = ..)} Set fields by {@link Prefs#load(Object)}.
+ *
+ * Not thread-safe. Backed by a {@link BoundedMap}.
+ */
+public class BoundedSet<E> extends AbstractSet<E> {
+
+    private final BoundedMap<E, Boolean> map;
+
+    /**
+     * @param maxEntries max size, or 0 for no limit (not allowed with {@link Eviction#LRU})
+     * @param eviction what to drop first
+     * @param ttlMillis for {@link Eviction#TTL}, how long elements live
+     */
+    public BoundedSet(int maxEntries, Eviction eviction, long ttlMillis) {
+        map = new BoundedMap<>(maxEntries, eviction, ttlMillis);
+    }
+
+    @Override
+    public boolean add(E elem) {
+        return map.put(elem, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Counts as a use, for LRU eviction.
+     */
+    @Override
+    public boolean contains(Object obj) {
+        return map.get(obj) != null;
+    }
+
+    @Override
+    public boolean remove(Object obj) {
+        return map.remove(obj) != null;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return map.keySet().iterator();
+    }
+
+    /**
+     * See: {@link BoundedMap#evictExpired()}.
+     */
+    public void evictExpired() {
+        map.evictExpired();
+    }
+
+    public int getMaxEntries() {
+        return map.getMaxEntries();
+    }
+
+    BoundedMap<E, Boolean> getMap() {
+        return map;
+    }
+}
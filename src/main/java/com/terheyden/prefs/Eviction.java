@@ -0,0 +1,24 @@
+package com.terheyden.prefs;
+
+/**
+ * How bounded collection fields decide what to drop.
+ * See: {@link Pref#maxEntries()}, {@link Pref#eviction()}.
+ */
+public enum Eviction {
+
+    /**
+     * Drop the oldest-added entries first.
+     */
+    INSERTION_ORDER,
+
+    /**
+     * Drop the least recently used entries first. Reads (contains / get) count as a use.
+     */
+    LRU,
+
+    /**
+     * Drop entries once they're older than {@link Pref#ttlMillis()}, and the oldest-added
+     * entries first if there are more than {@link Pref#maxEntries()}.
+     */
+    TTL
+}
@@ -0,0 +1,164 @@
+package com.terheyden.prefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.prefs.Preferences;
+
+/**
+ * An exclusive lock on one preferences node, held across every JVM on this host.
+ * Used by {@link PrefSettings#multiProcess()} saves and loads.
+ *
+ * Each node gets its own lock file. Lock files live next to the JDK's own prefs files, so only processes
+ * that can write a store can lock it: [java.util.prefs.userRoot or user.home]/.java/.prefsLocks for user nodes,
+ * and [java.util.prefs.systemRoot or /etc/.java]/.prefsLocks for system nodes.
+ * Set the "prefs.lockDir" system property to use [prefs.lockDir] for system locks, and
+ * [prefs.lockDir]/user-[user.name] for user locks, instead.
+ *
+ * Lock files are created with the default permissions. A lock dir owned by anyone but this user
+ * (or, for system locks, the owner of the dir it's in) is refused, so nobody else can hold our locks.
+ *
+ * The lock file also holds the node's latest multiProcess save stamp. Unlike the copy in the node itself,
+ * it can't be stale, so loads can tell whether they've really read other processes' saves.
+ *
+ * {@link FileLock}s are held by the whole JVM, so threads in this JVM also take an in-memory lock first.
+ * Reentrant - only the outermost lock() / unlock() touch the file.
+ */
+final class NodeLock {
+
+    private static final String LOCK_DIR_PROP = System.getProperty("prefs.lockDir");
+
+    private static final File USER_LOCK_DIR = LOCK_DIR_PROP != null
+        ? new File(LOCK_DIR_PROP, "user-" + System.getProperty("user.name"))
+        : new File(System.getProperty("java.util.prefs.userRoot", System.getProperty("user.home")), ".java/.prefsLocks");
+
+    private static final File SYS_LOCK_DIR = LOCK_DIR_PROP != null
+        ? new File(LOCK_DIR_PROP)
+        : new File(System.getProperty("java.util.prefs.systemRoot", "/etc/.java"), ".prefsLocks");
+
+    private static final Map<String, NodeLock> locks = new ConcurrentHashMap<>();
+
+    private final ReentrantLock jvmLock = new ReentrantLock();
+    private final File file;
+    private final boolean isUser;
+
+    // Only touched while holding jvmLock.
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private NodeLock(File file, boolean isUser) {
+        this.file = file;
+        this.isUser = isUser;
+    }
+
+    /**
+     * The lock for a node. User and system nodes with the same path get different locks.
+     */
+    static NodeLock of(Preferences prefs) {
+
+        // Paths that only differ in odd chars share a lock file, which is safe, just less concurrent.
+        boolean isUser = prefs.isUserNode();
+        String name = (isUser ? "user" : "sys")
+            + prefs.absolutePath().replaceAll("[^A-Za-z0-9._-]", "_") + ".lock";
+
+        return locks.computeIfAbsent(name, fileName ->
+            new NodeLock(new File(isUser ? USER_LOCK_DIR : SYS_LOCK_DIR, fileName), isUser));
+    }
+
+    void lock() throws IOException {
+
+        jvmLock.lock();
+
+        if (jvmLock.getHoldCount() > 1) {
+            return;
+        }
+
+        try {
+
+            if (channel == null || !channel.isOpen()) {
+
+                File dir = file.getParentFile();
+                if (!dir.mkdirs() && !dir.isDirectory()) {
+                    throw new IOException("Couldn't create lock dir: " + dir + " - set the prefs.lockDir system property to use another one");
+                }
+
+                checkOwner(dir.toPath());
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            fileLock = channel.lock();
+
+        } catch (IOException | RuntimeException e) {
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Refuse a lock dir someone else made, since they could hold or replace our lock files.
+     * User lock dirs must be ours. System ones may also belong to whoever owns the dir they're in
+     * (e.g. root, for /etc/.java), since system prefs are shared.
+     */
+    private void checkOwner(Path dir) throws IOException {
+
+        UserPrincipal owner = Files.getOwner(dir);
+        UserPrincipal me = dir.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+
+        if (owner.equals(me) || (!isUser && dir.getParent() != null && owner.equals(Files.getOwner(dir.getParent())))) {
+            return;
+        }
+
+        throw new IOException("Lock dir " + dir + " is owned by " + owner.getName() + ", not " + me.getName()
+            + " - remove it, or set the prefs.lockDir system property to use another one");
+    }
+
+    /**
+     * Only call while holding the lock.
+     * @return the last stamp written, or 0 if there isn't one
+     */
+    long readStamp() throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+        while (buf.hasRemaining() && channel.read(buf, buf.position()) > 0) {
+            // Keep reading.
+        }
+
+        return buf.hasRemaining() ? 0 : buf.getLong(0);
+    }
+
+    /**
+     * Only call while holding the lock.
+     */
+    void writeStamp(long stamp) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES).putLong(0, stamp);
+        while (buf.hasRemaining()) {
+            channel.write(buf, buf.position());
+        }
+    }
+
+    void unlock() {
+        try {
+
+            if (jvmLock.getHoldCount() == 1 && fileLock != null) {
+                fileLock.release();
+                fileLock = null;
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+}
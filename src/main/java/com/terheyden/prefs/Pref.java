@@ -33,4 +33,80 @@ public @interface Pref {
      * Must be a string, so for nums and bools do "3" and "true" etc.
      */
     String defaultVal() default "";
+
+    /**
+     * For very large Set&lt;String&gt; and Map&lt;String, String&gt; fields.
+     * If true, the field is loaded as a read-only, sorted table stored off the Java heap -
+     * a {@link SortedStringSet} or {@link SortedStringMap} - with O(log n) lookups.
+     * Declare the field as a Set / Map (or the sorted type itself), and use the
+     * plus / minus / with / without methods to create a changed copy to save.
+     * The stored format is the same, so you can switch this on and off freely.
+     */
+    boolean offHeap() default false;
+
+    /**
+     * For large Set&lt;String&gt; and Map&lt;String, String&gt; fields that change a little at a time.
+     * If true, saving only appends the adds / removes / puts since the last save to a log
+     * (stored in a child node named "[name].log"), instead of rewriting the whole collection.
+     * Once the log gets big compared to the collection, it's compacted into a new full copy.
+     * Loading replays the log onto the last full copy.
+     * Finding what changed still costs O(n) per save: the collection is diffed against a copy of
+     * itself from the last save or load. The copy is shallow - it shares the Strings.
+     */
+    boolean deltaLog() default false;
+
+    /**
+     * For large Map&lt;String, String&gt; fields that are read and updated an entry at a time.
+     * If true, each entry is stored as its own key in a child node named "[name].map", and the field is
+     * bound to a live {@link PrefMap} view of that node - get / put / remove only touch the one entry,
+     * and take effect immediately. Saving a plain Map into the field writes just the entries that changed.
+     * A map previously stored as a single value is moved into the child node on first load, as is one stored
+     * under any of the {@link #oldNames()}. {@link #migration()} isn't supported.
+     * Declare the field as a Map.
+     */
+    boolean perEntry() default false;
+
+    /**
+     * For List / Set / Map fields that are reloaded often.
+     * If true, {@link Prefs#load(Object)} clears the collection the field already holds and streams the
+     * saved entries straight into it, instead of replacing it with a new one. The collection keeps its
+     * capacity, and anything else holding a reference to it sees the new contents.
+     * If the field is null or holds a collection that can't be modified, a new one is created as usual.
+     * Not used with offHeap, deltaLog, perEntry, or bounded fields.
+     */
+    boolean inPlace() default false;
+
+    /**
+     * Names this preference was stored under in earlier versions.
+     * When there's no value under the current name, these are tried in order - with or without a
+     * {@link PrefSettings#version()}.
+     * They're removed the next time the field is saved.
+     */
+    String[] oldNames() default {};
+
+    /**
+     * Converts values stored by an earlier version (see {@link PrefSettings#version()}) into the current format,
+     * for example when a field changes type. Only runs on values from nodes older than the current version.
+     */
+    Class<? extends PrefMigration> migration() default PrefMigration.None.class;
+
+    /**
+     * For Set&lt;String&gt; and Map&lt;String, String&gt; fields that would otherwise grow forever.
+     * If set, the field is bound to a {@link BoundedSet} / {@link BoundedMap} that holds at most this many entries,
+     * dropping them according to {@link #eviction()}. The limit is enforced on load and save, too.
+     * Declare the field as a Set or Map. 0 means no limit.
+     */
+    int maxEntries() default 0;
+
+    /**
+     * Which entries a bounded collection drops first. See {@link #maxEntries()}.
+     * {@link Eviction#LRU} needs a maxEntries - without one it's rejected, since nothing would ever be dropped.
+     */
+    Eviction eviction() default Eviction.INSERTION_ORDER;
+
+    /**
+     * For {@link Eviction#TTL}, how long entries live, in millis.
+     * When each entry was added is stored alongside it, under "[name].ttl".
+     */
+    long ttlMillis() default 0;
 }
@@ -0,0 +1,231 @@
+package com.terheyden.prefs;
+
+import com.terheyden.prefs.util.AnnotationFinder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.prefs.Preferences;
+
+/**
+ * A handle to a single {@link Pref} field's stored value, for reading and writing
+ * one setting without loading or saving the whole object.
+ *
+ * Everything - the node, key name, type, and default - is resolved once, when you create the key,
+ * so there's no reflection, and get() is a single {@link Preferences} lookup.
+ * Create them once and keep them around, e.g.:
+ *
+ * <pre>
+ * static final PrefKey&lt;Integer&gt; TIMES_RAN = PrefKey.of(AppSettings.class, "timesRan");
+ * ..
+ * int timesRan = TIMES_RAN.get();
+ * </pre>
+ *
+ * Reads see the same values as {@link Prefs#load(Object)}, and writes are seen by it.
+ * Writes go through the same path as {@link Prefs#save(Object)}: {@link PrefSettings#multiProcess()} nodes
+ * are locked and synced, unchanged values aren't rewritten, and they're recorded as save events.
+ * compareAndSet() and update() are atomic with respect to other PrefKeys in this JVM, and for
+ * multiProcess classes, to PrefKeys and saves in other processes too - but not to saves in this one.
+ */
+public final class PrefKey<T> {
+
+    private final Preferences prefs;
+    private final String key;
+    private final Class<?> type;
+    private final Pref ann;
+    private final Class<?> settingsClass;
+    private final int version;
+    private final T defaultValue;
+
+    // Once the node is at our version it stays there, so reads stop checking it.
+    private volatile boolean nodeIsCurrent;
+
+    private PrefKey(Preferences prefs, String key, Class<?> type, Pref ann, Class<?> settingsClass, T defaultValue) {
+        this.prefs = prefs;
+        this.key = key;
+        this.type = type;
+        this.ann = ann;
+        this.settingsClass = settingsClass;
+        this.version = Prefs.getPrefVersion(settingsClass);
+        this.defaultValue = defaultValue;
+        this.nodeIsCurrent = version == 0;
+    }
+
+    /**
+     * Look up the {@link Pref} field with the specified name.
+     * Primitive fields use their boxed type, e.g. PrefKey&lt;Integer&gt; for an int.
+     * @param settingsClass the class that declares the field
+     * @param fieldName the Java field name (not the {@link Pref#name()})
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PrefKey<T> of(Class<?> settingsClass, String fieldName) {
+
+        Field field;
+        try {
+            field = AnnotationFinder.findField(settingsClass, fieldName);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("No field named " + fieldName + " in: " + settingsClass.getName(), e);
+        }
+
+        Pref ann = field.getAnnotation(Pref.class);
+        if (ann == null) {
+            throw new IllegalArgumentException("Field isn't annotated with @Pref: " + field);
+        }
+
+        if (ann.deltaLog()) {
+            throw new IllegalArgumentException("deltaLog fields can't be used as a PrefKey: " + field);
+        }
+
+        if (ann.perEntry()) {
+            throw new IllegalArgumentException("perEntry fields can't be used as a PrefKey, use the PrefMap instead: " + field);
+        }
+
+        if (Prefs.isBounded(ann)) {
+            throw new IllegalArgumentException("maxEntries / eviction fields can't be used as a PrefKey: " + field);
+        }
+
+        Class<?> type = field.getType();
+        String key = Prefs.getPrefKey(field, ann);
+        Preferences prefs = Prefs.getPrefs(ann.isGlobal(), Prefs.getPrefPath(settingsClass));
+
+        // Check the type is supported now, rather than on first use.
+        if (!ann.offHeap() && !Prefs.isSupportedType(type)) {
+            throw new IllegalArgumentException("Unknown type: " + type.getName());
+        }
+
+        return new PrefKey<>(prefs, key, type, ann, settingsClass, (T) defaultValueOf(type, ann.defaultVal()));
+    }
+
+    /**
+     * What get() returns when there's no stored value: the {@link Pref#defaultVal()} if set,
+     * otherwise 0 / false for primitives, and null for everything else.
+     */
+    private static Object defaultValueOf(Class<?> type, String defaultVal) {
+
+        try {
+
+            if (!defaultVal.isEmpty()) {
+                return Prefs.decodeValue(type, defaultVal, defaultVal);
+            } else if (type.isPrimitive()) {
+                return Prefs.decodeValue(type, "", "");
+            }
+
+            return null;
+
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid defaultVal: " + defaultVal, e);
+        }
+    }
+
+    /**
+     * @return the stored value, or the default if there isn't one.
+     * Values stored by an older {@link PrefSettings#version()} are migrated, as they are by load.
+     */
+    public T get() {
+
+        if (!nodeIsCurrent) {
+            nodeIsCurrent = prefs.getInt(Prefs.VERSION_KEY, 0) >= version;
+        }
+
+        // A version of 0 skips the version check - there's nothing to migrate.
+        return decode(Prefs.getSavedVal(prefs, key, ann, nodeIsCurrent ? 0 : version));
+    }
+
+    /**
+     * Store the value. Setting null removes it, so get() returns the default.
+     * If the node was saved by an older {@link PrefSettings#version()}, all of its values are migrated first.
+     */
+    public void set(T val) {
+        save(stored -> encode(val));
+    }
+
+    /**
+     * Set the value only if the current value equals the expected one.
+     * @return true if the value was set
+     */
+    public boolean compareAndSet(T expect, T update) {
+
+        AtomicBoolean swapped = new AtomicBoolean();
+
+        save(stored -> {
+
+            if (!Objects.equals(decode(stored), expect)) {
+                return stored;
+            }
+
+            swapped.set(true);
+            return encode(update);
+        });
+
+        return swapped.get();
+    }
+
+    /**
+     * Atomically replace the value with the result of the function.
+     * @return the new value
+     */
+    public T update(UnaryOperator<T> updater) {
+
+        AtomicReference<T> result = new AtomicReference<>();
+
+        save(stored -> {
+            T val = updater.apply(decode(stored));
+            result.set(val);
+            return encode(val);
+        });
+
+        return result.get();
+    }
+
+    private void save(UnaryOperator<String> update) {
+        Prefs.saveKey(prefs, settingsClass, key, ann, update);
+        nodeIsCurrent = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T decode(String savedVal) {
+
+        if (savedVal == null) {
+            // Collections can be modified, so every caller gets their own.
+            return defaultValue instanceof Collection || defaultValue instanceof Map
+                ? (T) defaultValueOf(type, ann.defaultVal())
+                : defaultValue;
+        }
+
+        try {
+            return (T) (ann.offHeap() ? Prefs.getOffHeap(type, savedVal) : Prefs.decodeValue(type, savedVal, ann.defaultVal()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't decode " + key + ": " + savedVal, e);
+        }
+    }
+
+    private String encode(T val) {
+
+        if (val == null) {
+            return null;
+        }
+
+        // Off-heap fields may be declared as the sorted types, which encode like any Set / Map.
+        Class<?> encodeType = ann.offHeap() ? (val instanceof Map ? Map.class : Set.class) : type;
+        return Prefs.encodeValue(encodeType, val);
+    }
+
+    /**
+     * The name this value is stored under.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "PrefKey[" + prefs.absolutePath() + "/" + key + "]";
+    }
+}
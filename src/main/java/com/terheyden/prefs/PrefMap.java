@@ -0,0 +1,173 @@
+package com.terheyden.prefs;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Live {@link java.util.Map} view of a {@link Preferences} node, one key per map entry.
+ * Bound to {@code @Pref(perEntry = true)} Map fields by {@link Prefs#load(Object)} and {@link Prefs#save(Object)}.
+ *
+ * Every get / put / remove goes straight to the node and only touches that one entry,
+ * so there's nothing to decode up front and nothing to re-encode on save.
+ * Keys are limited to {@link Preferences#MAX_KEY_LENGTH} chars and values to {@link Preferences#MAX_VALUE_LENGTH}.
+ * Null keys and values aren't supported.
+ */
+public final class PrefMap extends AbstractMap<String, String> {
+
+    private final Preferences node;
+
+    PrefMap(Preferences node) {
+        this.node = node;
+    }
+
+    Preferences getNode() {
+        return node;
+    }
+
+    @Override
+    public String get(Object key) {
+        return key instanceof String ? node.get((String) key, null) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public String put(String key, String val) {
+
+        String oldVal = node.get(key, null);
+
+        if (!val.equals(oldVal)) {
+            node.put(key, val);
+        }
+
+        return oldVal;
+    }
+
+    @Override
+    public String remove(Object key) {
+
+        String oldVal = get(key);
+
+        if (oldVal != null) {
+            node.remove((String) key);
+        }
+
+        return oldVal;
+    }
+
+    @Override
+    public int size() {
+        return keys().length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        try {
+            node.clear();
+        } catch (BackingStoreException e) {
+            throw new IllegalStateException("Couldn't clear: " + node.absolutePath(), e);
+        }
+    }
+
+    /**
+     * Iterates over the keys as they were when iteration started. Entries removed since then are skipped.
+     */
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+
+                    private final String[] keys = keys();
+                    private int next = 0;
+                    private Entry<String, String> nextEntry;
+                    private String lastKey;
+
+                    @Override
+                    public boolean hasNext() {
+
+                        while (nextEntry == null && next < keys.length) {
+                            String key = keys[next++];
+                            String val = node.get(key, null);
+                            if (val != null) {
+                                nextEntry = new PrefEntry(key, val);
+                            }
+                        }
+
+                        return nextEntry != null;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        Entry<String, String> entry = nextEntry;
+                        nextEntry = null;
+                        lastKey = entry.getKey();
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+
+                        if (lastKey == null) {
+                            throw new IllegalStateException();
+                        }
+
+                        node.remove(lastKey);
+                        lastKey = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PrefMap.this.size();
+            }
+        };
+    }
+
+    private String[] keys() {
+        try {
+            return node.keys();
+        } catch (BackingStoreException e) {
+            throw new IllegalStateException("Couldn't list keys: " + node.absolutePath(), e);
+        }
+    }
+
+    /**
+     * setValue() writes through to the node.
+     */
+    private final class PrefEntry extends SimpleEntry<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private PrefEntry(String key, String val) {
+            super(key, val);
+        }
+
+        @Override
+        public String setValue(String val) {
+            put(getKey(), val);
+            return super.setValue(val);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.terheyden.prefs;
+
+/**
+ * Converts a stored value from an older schema version into the current format.
+ * Attach to a field with {@link Pref#migration()}, and bump {@link PrefSettings#version()}.
+ *
+ * Migrations run lazily, inside {@link Prefs#load(Object)}, the first time a field is read
+ * from a node that was written by an older version. The converted value is written back
+ * (and the node marked current) the next time you {@link Prefs#save(Object)}.
+ *
+ * Implementations need a public no-arg constructor, and should be stateless.
+ */
+@FunctionalInterface
+public interface PrefMigration {
+
+    /**
+     * @param storedVal the raw stored value, as written by the old version (never null)
+     * @param storedVersion the {@link PrefSettings#version()} that wrote it (0 if it predates versioning)
+     * @return the raw value in the current format, or null to treat it as unset
+     */
+    String migrate(String storedVal, int storedVersion);
+
+    /**
+     * The default for {@link Pref#migration()} - leaves values alone.
+     */
+    class None implements PrefMigration {
+
+        @Override
+        public String migrate(String storedVal, int storedVersion) {
+            return storedVal;
+        }
+    }
+}
@@ -16,4 +16,33 @@ public @interface PrefSettings {
      * Defaults to the package your class is in (even if you don't use this annotation).
      */
     String path() default "";
+
+    /**
+     * The schema version of this class's preferences. Bump it when you rename a field
+     * (see {@link Pref#oldNames()}) or change how it's stored (see {@link Pref#migration()}).
+     * Each node remembers the version that last saved it, and older nodes are migrated lazily on load.
+     */
+    int version() default 0;
+
+    /**
+     * If true, each bound object remembers a hash of the raw stored value it last loaded or saved for each field,
+     * and {@link Prefs#load(Object)} skips decoding (and leaves the field alone) when the stored value hasn't changed.
+     * Reloading then only costs as much as the data that changed.
+     * Only turn this on if you don't change fields without saving them - an unsaved change won't be reverted
+     * by a load while the stored value stays the same. deltaLog and bounded fields are always reloaded.
+     */
+    boolean skipUnchanged() default false;
+
+    /**
+     * Set this if several JVMs on this host save to the same path.
+     * Saves and loads lock each node they touch with a per-node file lock (see the "prefs.lockDir"
+     * system property), sync with the store first, and bump a save stamp stored in the node.
+     * If another process has saved since this object last loaded or saved, fields it changed that we didn't
+     * are taken into this object instead of being overwritten. Fields both changed go to the last saver.
+     * Each save also flushes to disk.
+     * The JDK syncs under one lock per store (user or system), shared by every path and process, so
+     * multiProcess loads and saves are serialized with each other even when they write different paths.
+     * Keep them off hot paths. Nested objects need their own annotation to use this.
+     */
+    boolean multiProcess() default false;
 }
@@ -0,0 +1,369 @@
+package com.terheyden.prefs;
+
+import com.terheyden.prefs.util.AnnotationFinder;
+import com.terheyden.prefs.util.AnnotationFinder.AnnotationResult;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.NodeChangeEvent;
+import java.util.prefs.NodeChangeListener;
+import java.util.prefs.PreferenceChangeListener;
+import java.util.prefs.Preferences;
+
+/**
+ * A fully loaded, read-only copy of a settings class, kept up to date in the background.
+ * Get one with {@link Prefs#snapshot(Class)}.
+ *
+ * {@link #get()} is a single volatile read - no locking, no allocation, and never a half-loaded object.
+ * When the underlying preferences change, a new copy is loaded on a background thread and swapped in.
+ *
+ * Don't modify the returned objects - they're shared. Collection fields declared as
+ * List / Set / Map are wrapped to enforce this; concrete types (ArrayList etc.) can't be.
+ * {@link PrefMap} fields are copied, since a live view wouldn't be a snapshot, and so are
+ * {@link BoundedSet} / {@link BoundedMap} fields, since LRU ones change order when read.
+ *
+ * Java only reports changes made by this JVM, so call {@link #refresh()} if another process
+ * may have changed things.
+ *
+ * Layered snapshots (see {@link Prefs#layered(Class)}) merge user, global, and default values,
+ * and are patched one key at a time as values change, rather than reloaded.
+ */
+public final class PrefSnapshot<T> {
+
+    // One background thread rebuilds every snapshot, so rebuilds never compete with each other.
+    private static volatile Thread rebuilderThread;
+    private static final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "prefs-snapshot");
+        thread.setDaemon(true);
+        rebuilderThread = thread;
+        return thread;
+    });
+
+    private final Class<T> type;
+    private final boolean layered;
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private volatile T current;
+
+    PrefSnapshot(Class<T> type, boolean layered) {
+        this.type = type;
+        this.layered = layered;
+
+        // Listen first, so nothing that changes while we load is missed.
+        listen();
+        refresh();
+    }
+
+    /**
+     * @return the latest copy - don't modify it
+     */
+    public T get() {
+        return current;
+    }
+
+    /**
+     * Reload now, and wait for it.
+     * Runs on the background thread, like every other rebuild, so an older key update can't overwrite it.
+     */
+    public void refresh() {
+
+        if (Thread.currentThread() == rebuilderThread) {
+            rebuild();
+            return;
+        }
+
+        try {
+            rebuilder.submit(this::rebuild).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause()
+                : new IllegalStateException("Couldn't refresh snapshot: " + type.getName(), e.getCause());
+        }
+    }
+
+    /**
+     * Only run on the rebuilder thread.
+     */
+    private void rebuild() {
+
+        T fresh = newInstance();
+
+        if (layered) {
+            Prefs.loadLayered(fresh, null);
+        } else {
+            Prefs.load(fresh);
+        }
+
+        freeze(fresh, null);
+        current = fresh;
+    }
+
+    /**
+     * For layered snapshots - copy the current object, re-resolving only the changed key.
+     * Fields for that key start from their initial values, in case no layer has a value anymore.
+     */
+    private void update(String key) {
+
+        // A change arrived before the first load finished - that load will see it.
+        if (current == null) {
+            return;
+        }
+
+        T next = newInstance();
+
+        try {
+
+            for (AnnotationResult<Field> bindField : AnnotationFinder.findAnnotatedFields(next, Pref.class)) {
+
+                Field field = bindField.element;
+                if (!Modifier.isFinal(field.getModifiers())
+                    && !key.equals(Prefs.getPrefKey(field, (Pref) bindField.annotation))) {
+                    field.setAccessible(true);
+                    field.set(next, field.get(current));
+                }
+            }
+
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            rebuild();
+            return;
+        }
+
+        Prefs.loadLayered(next, key);
+        freeze(next, key);
+        current = next;
+    }
+
+    /**
+     * Rebuild on the background thread. A burst of changes (e.g. one save) only rebuilds once.
+     */
+    private void refreshLater() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuilder.execute(() -> {
+                rebuildPending.set(false);
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Watch every node our fields are stored in.
+     */
+    private void listen() {
+
+        String prefPath = Prefs.getPrefPath(type);
+
+        // Changes to the top-level nodes can be patched key by key.
+        Preferences userPrefs = Prefs.getPrefs(false, prefPath);
+        Preferences sysPrefs = Prefs.getPrefs(true, prefPath);
+
+        // Relative to the top-level nodes, with "" for the top-level node itself.
+        Set<String> userPaths = new HashSet<>();
+        Set<String> sysPaths = new HashSet<>();
+        addPaths(newInstance(), "", userPaths, sysPaths);
+
+        PreferenceChangeListener listener = event -> {
+
+            // Patch layered snapshots key by key, unless it's a change we can't map to a field (e.g. a delta log).
+            boolean isFieldNode = event.getNode() == userPrefs || event.getNode() == sysPrefs;
+
+            if (layered && isFieldNode) {
+                String key = event.getKey();
+                rebuilder.execute(() -> {
+                    try {
+                        update(key);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            } else {
+                refreshLater();
+            }
+        };
+
+        userPaths.forEach(path -> watch(userPrefs, path.isEmpty() ? new String[0] : path.split("/"), 0, listener));
+        sysPaths.forEach(path -> watch(sysPrefs, path.isEmpty() ? new String[0] : path.split("/"), 0, listener));
+    }
+
+    /**
+     * Add the paths of the nodes the object's fields are stored in, including nested objects' nodes.
+     * @param path the object's node, relative to the top-level nodes
+     */
+    private void addPaths(Object obj, String path, Set<String> userPaths, Set<String> sysPaths) {
+
+        String prefix = path.isEmpty() ? "" : path + "/";
+
+        // Layered snapshots read every field from both stores.
+        if (layered) {
+            userPaths.add(path);
+            sysPaths.add(path);
+        }
+
+        for (AnnotationResult<Field> bindField : AnnotationFinder.findAnnotatedFields(obj, Pref.class)) {
+
+            Field field = bindField.element;
+            Pref ann = (Pref) bindField.annotation;
+            String key = Prefs.getPrefKey(field, ann);
+            Set<String> paths = ann.isGlobal() ? sysPaths : userPaths;
+
+            if (Prefs.isNested(ann, field.getType())) {
+                // Watch the nested object's nodes, even if it hasn't been saved yet.
+                Object nested = getField(field, obj);
+                addPaths(nested == null ? Prefs.newNested(field.getType()) : nested, prefix + key, userPaths, sysPaths);
+                continue;
+            }
+
+            paths.add(path);
+
+            // Delta saves only touch the log node, and PrefMap writes only touch the entry node.
+            String childName = ann.deltaLog() ? key + Prefs.DELTA_LOG_SUFFIX
+                : ann.perEntry() ? key + Prefs.ENTRY_NODE_SUFFIX
+                : null;
+
+            if (childName != null) {
+                paths.add(prefix + childName);
+                if (layered) {
+                    userPaths.add(prefix + childName);
+                    sysPaths.add(prefix + childName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listen to the node at names[i..] under the parent. Snapshots are read-only, so nodes that don't
+     * exist yet aren't created - instead we watch for them to be added, under their nearest existing
+     * ancestor, and reload when they are. A node that's removed and added again is watched again.
+     */
+    private void watch(Preferences parent, String[] names, int i, PreferenceChangeListener listener) {
+
+        if (i == names.length) {
+            parent.addPreferenceChangeListener(listener);
+            return;
+        }
+
+        String name = names[i];
+
+        // Listen before checking, so a node added in between isn't missed.
+        parent.addNodeChangeListener(new NodeChangeListener() {
+
+            @Override
+            public void childAdded(NodeChangeEvent event) {
+                if (event.getChild().name().equals(name)) {
+
+                    // Listeners that throw stop the JDK delivering any more events, to anyone.
+                    try {
+                        watch(event.getChild(), names, i + 1, listener);
+                    } catch (IllegalStateException e) {
+                        // Already removed again - we'll see it if it's added back.
+                    }
+
+                    // Values may have been put before we were listening.
+                    refreshLater();
+                }
+            }
+
+            @Override
+            public void childRemoved(NodeChangeEvent event) {
+                if (event.getChild().name().equals(name)) {
+                    refreshLater();
+                }
+            }
+        });
+
+        try {
+
+            if (parent.nodeExists(name)) {
+                watch(parent.node(name), names, i + 1, listener);
+            }
+
+        } catch (BackingStoreException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Object getField(Field field, Object obj) {
+        try {
+            field.setAccessible(true);
+            return field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private T newInstance() {
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Snapshot classes need a public no-arg constructor: " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Wrap collection fields declared as interfaces, so they can't be modified.
+     * @param onlyKey only the field(s) stored under this key, or null for all of them
+     */
+    private static void freeze(Object obj, String onlyKey) {
+
+        for (AnnotationResult<Field> bindField : AnnotationFinder.findAnnotatedFields(obj, Pref.class)) {
+
+            Field field = bindField.element;
+            Class<?> fieldType = field.getType();
+
+            if (Modifier.isFinal(field.getModifiers())
+                || (onlyKey != null && !onlyKey.equals(Prefs.getPrefKey(field, (Pref) bindField.annotation)))) {
+                continue;
+            }
+
+            try {
+
+                field.setAccessible(true);
+                Object val = field.get(obj);
+
+                if (val == null) {
+                    continue;
+                } else if (Prefs.isNested((Pref) bindField.annotation, fieldType)) {
+                    freeze(val, null);
+                } else if (val instanceof PrefMap) {
+                    // Live views would change under the reader, so copy them.
+                    field.set(obj, Collections.unmodifiableMap(new HashMap<>((PrefMap) val)));
+                } else if (val instanceof BoundedMap) {
+                    // LRU maps reorder themselves on reads, so readers would be writing shared state - copy them.
+                    field.set(obj, Collections.unmodifiableMap(new LinkedHashMap<>((BoundedMap<?, ?>) val)));
+                } else if (val instanceof BoundedSet) {
+                    field.set(obj, Collections.unmodifiableSet(new LinkedHashSet<>((BoundedSet<?>) val)));
+                } else if (fieldType == List.class) {
+                    field.set(obj, Collections.unmodifiableList((List<?>) val));
+                } else if (fieldType == Set.class) {
+                    field.set(obj, Collections.unmodifiableSet((Set<?>) val));
+                } else if (fieldType == Map.class) {
+                    field.set(obj, Collections.unmodifiableMap((Map<?, ?>) val));
+                } else if (fieldType == Collection.class) {
+                    field.set(obj, Collections.unmodifiableCollection((Collection<?>) val));
+                }
+
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
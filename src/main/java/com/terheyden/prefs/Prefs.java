@@ -2,20 +2,38 @@ package com.terheyden.prefs;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.terheyden.prefs.util.AnnotationFinder;
+import com.terheyden.prefs.jfr.PrefsCodecEvent;
+import com.terheyden.prefs.jfr.PrefsFlushEvent;
+import com.terheyden.prefs.jfr.PrefsLoadEvent;
+import com.terheyden.prefs.jfr.PrefsNodeEvent;
+import com.terheyden.prefs.jfr.PrefsSaveEvent;
 import com.terheyden.prefs.util.AnnotationFinder.AnnotationResult;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
@@ -33,81 +51,256 @@ public enum Prefs {
 
     // Preference maps for the isGlobal and user spaces.
     // Key is the consumer's path, e.g., "/com/myname/myapp".
-    private static final Map<String, Preferences> userPrefMap = new HashMap<>();
-    private static final Map<String, Preferences> sysPrefMap = new HashMap<>();
+    private static final Map<String, Preferences> userPrefMap = new ConcurrentHashMap<>();
+    private static final Map<String, Preferences> sysPrefMap = new ConcurrentHashMap<>();
+
+    // The child nodes nested @Pref objects were loaded from or saved to, so deleteAllPrefs can remove them.
+    private static final Set<String> nestedPaths = ConcurrentHashMap.newKeySet();
 
     // Supported serialized types:
     private static final Type TYPE_HASH_SET_STR = new TypeToken<HashSet<String>>() { }.getType();
     private static final Type TYPE_ARRAY_LIST_STR = new TypeToken<ArrayList<String>>() { }.getType();
     private static final Type TYPE_LINKED_LIST_STR = new TypeToken<LinkedList<String>>() { }.getType();
     private static final Type TYPE_HASH_MAP_STR_STR = new TypeToken<HashMap<String, String>>() { }.getType();
+    private static final Type TYPE_HASH_MAP_STR_LONG = new TypeToken<HashMap<String, Long>>() { }.getType();
+
+    // TTL-evicted collections store when each entry was added under the pref key, plus this suffix.
+    private static final String TTL_SUFFIX = ".ttl";
+
+    // Delta logs (see Pref.deltaLog) live in a child node named after the pref key, plus this suffix.
+    static final String DELTA_LOG_SUFFIX = ".log";
+    // The log remembers which full copy it applies to, so a stale log is never replayed.
+    private static final String DELTA_LOG_BASE_KEY = "base";
+    // Compact once the log has more entries than this, and more than this fraction of the collection size.
+    private static final int DELTA_LOG_MIN = 32;
+    private static final double DELTA_LOG_RATIO = 0.5;
+
+    // Per-entry maps (see Pref.perEntry) live in a child node named after the pref key, plus this suffix.
+    static final String ENTRY_NODE_SUFFIX = ".map";
+
+    // Nested @Pref objects are saved in child nodes, at most this deep.
+    private static final int MAX_NESTING = 32;
+    // Which field types are nested @Pref objects (see isNested).
+    private static final Map<Class<?>, Boolean> nestedTypes = new ConcurrentHashMap<>();
+
+    // Multi-process nodes (see PrefSettings.multiProcess) count their saves under this key.
+    private static final String STAMP_KEY = "_prefsStamp";
+    private static final int SYNC_ATTEMPTS = 5;
+
+    // Each node remembers the PrefSettings.version that last saved it, under this key.
+    static final String VERSION_KEY = "_prefsVersion";
+
+    // JDK Flight Recorder events are emitted if this JVM has JFR (Java 8u262+ and 11+).
+    // They cost next to nothing when nothing is recording.
+    private static final boolean JFR_EVENTS = hasClass("jdk.jfr.Event");
+
+    // Shared PrefMigration instances, by class.
+    private static final Map<Class<? extends PrefMigration>, PrefMigration> migrations = new ConcurrentHashMap<>();
 
     /**
      * For working with objs. Don't use this, use the gson() method instead.
      */
     private static Gson _gson;
 
+    /**
+     * Shares identical Strings across everything we load. Off (null) by default.
+     */
+    private static volatile StringPool stringPool;
+
+    // Read-only snapshots, by settings class. See snapshot().
+    private static final Map<Class<?>, PrefSnapshot<?>> snapshots = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, PrefSnapshot<?>> layeredSnapshots = new ConcurrentHashMap<>();
+
     /**
      * Lazy lookup of the {@link Preferences} obj corresponding to the user / sys domain
      * and the specified user path. Creates if not found.
      *
      * @param sysPrefs 'user' space, or 'isGlobal' space?
      */
-    private static Preferences getPrefs(boolean sysPrefs, String prefPath) {
+    static Preferences getPrefs(boolean sysPrefs, String prefPath) {
 
         Map<String, Preferences> prefMap = sysPrefs ? sysPrefMap : userPrefMap;
 
-        if (!prefMap.containsKey(prefPath)) {
-            Preferences prefs = sysPrefs ? Preferences.systemRoot().node(prefPath) : Preferences.userRoot().node(prefPath);
-            prefMap.put(prefPath, prefs);
-        }
+        return prefMap.computeIfAbsent(prefPath, path -> {
 
-        return prefMap.get(prefPath);
+            PrefsNodeEvent event = JFR_EVENTS ? new PrefsNodeEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+
+            Preferences prefs = sysPrefs ? Preferences.systemRoot().node(path) : Preferences.userRoot().node(path);
+
+            if (event != null && event.shouldCommit()) {
+                event.path = path;
+                event.global = sysPrefs;
+                event.commit();
+            }
+
+            return prefs;
+        });
     }
 
     /**
      * CANNOT BE NULL.
+     * Values that haven't changed aren't rewritten, so saving an unchanged object (or subtree) writes nothing.
      */
     private static void setStr(Preferences prefs, String key, String val) {
-        prefs.put(key, val);
+        if (!val.equals(prefs.get(key, null))) {
+            prefs.put(key, val);
+        }
     }
 
-    private static void setInt(Preferences prefs, String key, int val) {
-        prefs.putInt(key, val);
+    private static void setJsonObj(Preferences prefStore, String key, Object val) {
+        prefStore.put(key, toJson(val));
     }
 
-    private static void setLong(Preferences prefs, String key, long val) {
-        prefs.putLong(key, val);
+    /**
+     * Encode a collection as JSON, recording a {@link PrefsCodecEvent} if JFR is recording.
+     */
+    private static String toJson(Object val) {
+
+        PrefsCodecEvent event = beginCodecEvent();
+        String json = gson().toJson(val);
+        endCodecEvent(event, true, val.getClass(), json);
+
+        return json;
     }
 
-    private static void setBool(Preferences prefs, String key, boolean val) {
-        prefs.putBoolean(key, val);
+    private static PrefsCodecEvent beginCodecEvent() {
+
+        if (!JFR_EVENTS) {
+            return null;
+        }
+
+        PrefsCodecEvent event = new PrefsCodecEvent();
+        event.begin();
+        return event;
     }
 
-    private static void setJsonObj(Preferences prefStore, String key, Object val) {
-        prefStore.put(key, gson().toJson(val));
+    private static void endCodecEvent(PrefsCodecEvent event, boolean encode, Class<?> valueType, String json) {
+
+        if (event != null && event.shouldCommit()) {
+            event.encode = encode;
+            event.valueType = valueType;
+            event.encodedBytes = utf8Length(json);
+            event.commit();
+        }
+    }
+
+    /**
+     * How many bytes the String takes as UTF-8, the way the file store writes it - without encoding it.
+     */
+    private static long utf8Length(String str) {
+
+        long bytes = 0;
+        for (int i = 0; i < str.length(); i++) {
+
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Encode a non-null field value of a supported type into its stored String form.
+     * Same format as Preferences.putInt() and friends.
+     */
+    static String encodeValue(Class<?> type, Object val) {
+
+        if (type == String.class) {
+            return (String) val;
+        } else if (isJsonType(type)) {
+            return toJson(val);
+        } else if (isSupportedType(type)) {
+            return String.valueOf(val);
+        }
+
+        throw new IllegalArgumentException("Unknown type: " + type.getName());
     }
 
-    private static void setLinkedList(Preferences prefs, String key, LinkedList<String> val) {
-        setJsonObj(prefs, key, val);
+    /**
+     * @return true if we know how to store fields of this type
+     */
+    static boolean isSupportedType(Class<?> type) {
+        return type == String.class
+            || type == Integer.class || type == Integer.TYPE
+            || type == Long.class || type == Long.TYPE
+            || type == Boolean.class || type == Boolean.TYPE
+            || isJsonType(type);
     }
 
-    private static void setArrayList(Preferences prefs, String key, ArrayList<String> val) {
-        setJsonObj(prefs, key, val);
+    /**
+     * The String collection types, which are stored as JSON.
+     */
+    private static boolean isJsonType(Class<?> type) {
+        return type == LinkedList.class
+            || type == ArrayList.class || type == List.class
+            || type == HashMap.class || type == Map.class
+            || type == HashSet.class || type == Set.class;
     }
 
-    private static void setHashMap(Preferences prefs, String key, HashMap<String, String> val) {
-        setJsonObj(prefs, key, val);
+    /**
+     * Dedupe the Strings in collection fields as they're loaded, using the specified pool.
+     * Handy when many objects load the same lists / sets / maps.
+     * @param pool the pool to use, or null to stop pooling (the default)
+     */
+    public static void setStringPool(StringPool pool) {
+        stringPool = pool;
     }
 
-    private static void setHashSet(Preferences prefs, String key, HashSet<String> val) {
-        setJsonObj(prefs, key, val);
+    /**
+     * @return the pool set by {@link #setStringPool(StringPool)}, for checking stats; may be null
+     */
+    public static StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * Get a read-only, fully loaded instance of the settings class, for hot paths that read settings
+     * all the time. It's kept up to date in the background as the preferences change,
+     * and {@link PrefSnapshot#get()} is a single volatile read.
+     * There's one snapshot per class, created (and loaded) on first call.
+     * @param settingsClass needs a public no-arg constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PrefSnapshot<T> snapshot(Class<T> settingsClass) {
+        return (PrefSnapshot<T>) snapshots.computeIfAbsent(settingsClass, cls -> new PrefSnapshot<>(cls, false));
+    }
+
+    /**
+     * Like {@link #snapshot(Class)}, but each field is resolved across both stores:
+     * the user value if there is one, else the global (system) value, else the {@link Pref#defaultVal()}.
+     * {@link Pref#isGlobal()} is ignored - it only says where {@link #save(Object)} writes.
+     *
+     * The merged copy is built once, then patched one key at a time as values change,
+     * so reads cost the same as any snapshot.
+     * @param settingsClass needs a public no-arg constructor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PrefSnapshot<T> layered(Class<T> settingsClass) {
+        return (PrefSnapshot<T>) layeredSnapshots.computeIfAbsent(settingsClass, cls -> new PrefSnapshot<>(cls, true));
     }
 
     /**
      * Use sparingly, throws if there are no values.
      */
     public static void flushAllPrefs() {
+
+        PrefsFlushEvent event = JFR_EVENTS ? new PrefsFlushEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
         try {
 
             for (String key : userPrefMap.keySet()) {
@@ -121,48 +314,923 @@ public enum Prefs {
         } catch (BackingStoreException e) {
             e.printStackTrace();
         }
+
+        if (event != null && event.shouldCommit()) {
+            event.nodeCount = userPrefMap.size() + sysPrefMap.size();
+            event.commit();
+        }
+    }
+
+    private static String getStr(Preferences prefs, String key, String defaultVal) {
+        return prefs.get(key, defaultVal);
+    }
+
+    // Stored values are always strings, so we decode them ourselves - they may not have come
+    // straight from the store (see PrefMigration). Same rules as Preferences.getInt() and friends.
+
+    private static int parseInt(String savedVal, int defaultVal) {
+        try {
+            return Integer.parseInt(savedVal);
+        } catch (NumberFormatException e) {
+            return defaultVal;
+        }
+    }
+
+    private static long parseLong(String savedVal, long defaultVal) {
+        try {
+            return Long.parseLong(savedVal);
+        } catch (NumberFormatException e) {
+            return defaultVal;
+        }
+    }
+
+    private static boolean parseBool(String savedVal, boolean defaultVal) {
+
+        if ("true".equalsIgnoreCase(savedVal)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(savedVal)) {
+            return false;
+        }
+
+        return defaultVal;
+    }
+
+    /**
+     * Decode String collections, running them through the {@link StringPool} if there is one.
+     * @param isKeys are these elements keys (always pooled) or values (pooled if configured)?
+     */
+    private static <T extends Collection<String>> T fromJsonStrings(
+        String json, Type valType, Supplier<T> newColl, boolean isKeys) throws IOException {
+
+        StringPool pool = stringPool;
+        if (pool == null) {
+            return gson().fromJson(json, valType);
+        }
+
+        // Keep nulls, so pooling doesn't change what's decoded.
+        T coll = newColl.get();
+        readJsonStrings(json, true, str -> coll.add(pool.intern(str, isKeys)));
+        return coll;
+    }
+
+    /**
+     * For {@link Pref#inPlace()} - clear the collection the field holds, and stream the saved entries into it.
+     * @return false if there's no collection we can reuse, so the caller should decode a new one
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean loadInPlace(Object current, Class<?> fieldType, Pref ann, String json) throws IOException {
+
+        if (current == null || !isJsonType(fieldType) || ann.offHeap() || ann.deltaLog() || isBounded(ann)) {
+            return false;
+        }
+
+        // Clearing is the point of no return, so a malformed value has to fail before it, leaving the field as-is.
+        checkJsonStrings(json, current instanceof Map);
+
+        StringPool pool = stringPool;
+        PrefsCodecEvent event = beginCodecEvent();
+
+        try {
+
+            if (current instanceof Map) {
+
+                Map<String, String> map = (Map<String, String>) current;
+                map.clear();
+                readJsonStringMap(json, true, (key, val) -> map.put(intern(pool, key, true), intern(pool, val, false)));
+
+            } else {
+
+                // Set elements are pooled like map keys.
+                Collection<String> coll = (Collection<String>) current;
+                boolean isKeys = coll instanceof Set;
+                coll.clear();
+                readJsonStrings(json, true, str -> coll.add(intern(pool, str, isKeys)));
+            }
+
+        } catch (UnsupportedOperationException e) {
+            // e.g. an unmodifiable collection.
+            return false;
+        }
+
+        endCodecEvent(event, false, fieldType, json);
+        return true;
+    }
+
+    private static String intern(StringPool pool, String str, boolean isKey) {
+        return pool == null ? str : pool.intern(str, isKey);
+    }
+
+    private static HashMap<String, String> fromJsonStringMap(String json) throws IOException {
+
+        StringPool pool = stringPool;
+        if (pool == null) {
+            return gson().fromJson(json, TYPE_HASH_MAP_STR_STR);
+        }
+
+        HashMap<String, String> map = new HashMap<>();
+        readJsonStringMap(json, true, (key, val) -> map.put(pool.intern(key, true), pool.intern(val, false)));
+        return map;
+    }
+
+    /**
+     * Decode a stored String into a field value of a supported type.
+     * @param defaultVal the {@link Pref#defaultVal()}, used if a number / bool can't be parsed
+     */
+    static Object decodeValue(Class<?> type, String savedVal, String defaultVal) throws IOException {
+
+        if (type == String.class) {
+            return savedVal;
+        } else if (type == Integer.class || type == Integer.TYPE) {
+            return parseInt(savedVal, defaultVal.isEmpty() ? 0 : Integer.parseInt(defaultVal));
+        } else if (type == Long.class || type == Long.TYPE) {
+            return parseLong(savedVal, defaultVal.isEmpty() ? 0 : Long.parseLong(defaultVal));
+        } else if (type == Boolean.class || type == Boolean.TYPE) {
+            return parseBool(savedVal, defaultVal.isEmpty() ? false : Boolean.parseBoolean(defaultVal));
+        } else if (type == LinkedList.class) {
+            return parseLinkedList(savedVal);
+        } else if (type == ArrayList.class || type == List.class) {
+            return parseArrayList(savedVal);
+        } else if (type == HashMap.class || type == Map.class) {
+            return parseHashMap(savedVal);
+        } else if (type == HashSet.class || type == Set.class) {
+            return parseHashSet(savedVal);
+        }
+
+        throw new IllegalArgumentException("Not sure how to unbind: " + type);
+    }
+
+    private static LinkedList<String> parseLinkedList(String json) throws IOException {
+        return fromJsonStrings(json, TYPE_LINKED_LIST_STR, LinkedList::new, false);
+    }
+
+    private static ArrayList<String> parseArrayList(String json) throws IOException {
+        return fromJsonStrings(json, TYPE_ARRAY_LIST_STR, ArrayList::new, false);
+    }
+
+    private static HashMap<String, String> parseHashMap(String json) throws IOException {
+        return fromJsonStringMap(json);
+    }
+
+    private static HashSet<String> parseHashSet(String json) throws IOException {
+        return fromJsonStrings(json, TYPE_HASH_SET_STR, HashSet::new, true);
+    }
+
+    /**
+     * Stream a JSON array of Strings, without building a collection.
+     * Null elements are skipped.
+     */
+    private static void readJsonStrings(String json, Consumer<String> eachStr) throws IOException {
+        readJsonStrings(json, false, eachStr);
+    }
+
+    /**
+     * @param keepNulls pass null elements on, like Gson does, rather than skipping them
+     */
+    private static void readJsonStrings(String json, boolean keepNulls, Consumer<String> eachStr) throws IOException {
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    if (keepNulls) {
+                        eachStr.accept(null);
+                    }
+                } else {
+                    eachStr.accept(reader.nextString());
+                }
+            }
+            reader.endArray();
+        }
+    }
+
+    /**
+     * Make sure a JSON array of Strings, or object of String to String, would read cleanly,
+     * skipping over every value rather than decoding it.
+     * @throws IOException if it's malformed or holds anything but Strings / nulls
+     */
+    private static void checkJsonStrings(String json, boolean isMap) throws IOException {
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+
+            if (isMap) {
+                reader.beginObject();
+            } else {
+                reader.beginArray();
+            }
+
+            while (reader.hasNext()) {
+
+                if (isMap) {
+                    // Skips the name.
+                    reader.skipValue();
+                }
+
+                // The same tokens nextString() accepts.
+                JsonToken token = reader.peek();
+                if (token != JsonToken.STRING && token != JsonToken.NUMBER && token != JsonToken.NULL) {
+                    throw new IOException("Expected a string but was " + token + ": " + json);
+                }
+
+                reader.skipValue();
+            }
+
+            if (isMap) {
+                reader.endObject();
+            } else {
+                reader.endArray();
+            }
+        }
+    }
+
+    /**
+     * Stream a JSON object of String to String, without building a map.
+     * Null values are skipped.
+     */
+    private static void readJsonStringMap(String json, BiConsumer<String, String> eachEntry) throws IOException {
+        readJsonStringMap(json, false, eachEntry);
+    }
+
+    /**
+     * @param keepNulls pass entries with null values on, like Gson does, rather than skipping them
+     */
+    private static void readJsonStringMap(String json, boolean keepNulls, BiConsumer<String, String> eachEntry) throws IOException {
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    if (keepNulls) {
+                        eachEntry.accept(key, null);
+                    }
+                } else {
+                    eachEntry.accept(key, reader.nextString());
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    /**
+     * Decode a stored Set or Map into its off-heap, read-only sorted form.
+     * See: {@link Pref#offHeap()}.
+     */
+    static Object getOffHeap(Class<?> fieldType, String json) throws IOException {
+
+        if (fieldType.isAssignableFrom(SortedStringSet.class)) {
+
+            List<String> strs = new ArrayList<>();
+            readJsonStrings(json, strs::add);
+            return SortedStringSet.of(strs);
+
+        } else if (fieldType.isAssignableFrom(SortedStringMap.class)) {
+
+            Map<String, String> map = new HashMap<>();
+            readJsonStringMap(json, map::put);
+            return SortedStringMap.of(map);
+        }
+
+        throw new IllegalArgumentException("offHeap fields must be declared as a Set or Map, not: " + fieldType.getName());
+    }
+
+    /**
+     * Save a {@link Pref#deltaLog()} Set / Map by appending what changed since this obj last
+     * saved or loaded it to the log. Rewrites the full collection instead if we have nothing
+     * to diff against, or if the log has grown too big.
+     * Locks the log, so savers in this JVM can't number their entries the same and overwrite each other.
+     * ({@link PrefSettings#multiProcess()} saves already hold the node's lock, for other processes.)
+     */
+    private static void setDelta(Preferences prefs, String key, Field field, Object obj, Object val) throws BackingStoreException {
+
+        checkDeltaType(field.getType());
+
+        BindState state = BindState.of(obj);
+        Object lastVal = state.deltaBases.get(field);
+        Preferences log = prefs.node(key + DELTA_LOG_SUFFIX);
+
+        synchronized (log) {
+
+            String json = prefs.get(key, null);
+            boolean logIsCurrent = json != null && deltaBaseHash(json).equals(log.get(DELTA_LOG_BASE_KEY, null));
+
+            if (lastVal != null && logIsCurrent) {
+
+                List<String[]> ops = deltaDiff(lastVal, val);
+                if (ops.isEmpty()) {
+                    return;
+                }
+
+                // Minus one for the base key.
+                int logSize = log.keys().length - 1;
+
+                if (logSize + ops.size() <= Math.max(DELTA_LOG_MIN, DELTA_LOG_RATIO * deltaSize(val))) {
+
+                    for (String[] op : ops) {
+                        log.put(String.format("%010d", logSize++), gson().toJson(op));
+                    }
+
+                    state.deltaBases.put(field, deltaCopy(val));
+                    return;
+                }
+            }
+
+            // Compact - write the full collection, and start a fresh log against it.
+            json = toJson(val);
+            setStr(prefs, key, json);
+            log.clear();
+            log.put(DELTA_LOG_BASE_KEY, deltaBaseHash(json));
+            state.deltaBases.put(field, deltaCopy(val));
+        }
+    }
+
+    /**
+     * Load a {@link Pref#deltaLog()} Set / Map - the last full copy, with the log replayed on top.
+     */
+    private static Object getDelta(Preferences prefs, String key, Field field, Object obj, String json)
+        throws BackingStoreException, IOException {
+
+        boolean isMap = checkDeltaType(field.getType());
+        Object val = isMap ? parseHashMap(json) : parseHashSet(json);
+
+        if (prefs.nodeExists(key + DELTA_LOG_SUFFIX)) {
+
+            Preferences log = prefs.node(key + DELTA_LOG_SUFFIX);
+
+            // Ignore the log if the full copy was rewritten without it.
+            if (deltaBaseHash(json).equals(log.get(DELTA_LOG_BASE_KEY, null))) {
+
+                String[] seqs = log.keys();
+                Arrays.sort(seqs);
+
+                for (String seq : seqs) {
+                    if (!seq.equals(DELTA_LOG_BASE_KEY)) {
+                        deltaApply(val, gson().fromJson(log.get(seq, null), String[].class));
+                    }
+                }
+            }
+        }
+
+        BindState.of(obj).deltaBases.put(field, deltaCopy(val));
+        return val;
+    }
+
+    /**
+     * @throws IllegalArgumentException for LRU eviction without a maxEntries, which would never evict anything
+     */
+    static boolean isBounded(Pref ann) {
+
+        if (ann.eviction() == Eviction.LRU && ann.maxEntries() <= 0) {
+            throw new IllegalArgumentException("eviction = LRU needs a maxEntries: " + ann);
+        }
+
+        return ann.maxEntries() > 0 || ann.eviction() == Eviction.TTL;
+    }
+
+    /**
+     * A new, empty bounded collection for the field. See: {@link Pref#maxEntries()}.
+     */
+    private static Object newBounded(Class<?> fieldType, Pref ann) {
+
+        if (fieldType.isAssignableFrom(BoundedSet.class)) {
+            return new BoundedSet<String>(ann.maxEntries(), ann.eviction(), ann.ttlMillis());
+        } else if (fieldType.isAssignableFrom(BoundedMap.class)) {
+            return new BoundedMap<String, String>(ann.maxEntries(), ann.eviction(), ann.ttlMillis());
+        }
+
+        throw new IllegalArgumentException("maxEntries / eviction fields must be declared as a Set or Map, not: " + fieldType.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BoundedMap<String, ?> boundedMapOf(Object bounded) {
+        return bounded instanceof BoundedSet ? ((BoundedSet<String>) bounded).getMap() : (BoundedMap<String, ?>) bounded;
+    }
+
+    /**
+     * Save a bounded Set / Map, first swapping in a bounded collection if the field doesn't
+     * already have one, and dropping anything over the limit or expired.
+     */
+    @SuppressWarnings("unchecked")
+    private static void setBounded(Preferences prefs, String key, Field field, Object obj, Pref ann) throws IllegalAccessException {
+
+        Object val = field.get(obj);
+        Object bounded = val;
+
+        if (!(val instanceof BoundedSet || val instanceof BoundedMap)) {
+
+            bounded = newBounded(field.getType(), ann);
+
+            if (bounded instanceof BoundedSet) {
+                ((BoundedSet<String>) bounded).addAll((Collection<String>) val);
+            } else {
+                ((BoundedMap<String, String>) bounded).putAll((Map<String, String>) val);
+            }
+
+            field.set(obj, bounded);
+        }
+
+        BoundedMap<String, ?> map = boundedMapOf(bounded);
+        map.evictExpired();
+
+        setStr(prefs, key, encodeValue(bounded instanceof Map ? Map.class : Set.class, bounded));
+
+        if (map.getAddedAt() != null) {
+            setJsonObj(prefs, key + TTL_SUFFIX, map.getAddedAt());
+        }
+    }
+
+    /**
+     * Load a bounded Set / Map, dropping anything over the limit or expired.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object getBounded(Preferences prefs, String key, Class<?> fieldType, Pref ann, String json) throws IOException {
+
+        Object bounded = newBounded(fieldType, ann);
+        StringPool pool = stringPool;
+
+        if (bounded instanceof BoundedSet) {
+            BoundedSet<String> set = (BoundedSet<String>) bounded;
+            readJsonStrings(json, str -> set.add(pool == null ? str : pool.intern(str, true)));
+        } else {
+            BoundedMap<String, String> map = (BoundedMap<String, String>) bounded;
+            readJsonStringMap(json, (k, v) -> map.put(
+                pool == null ? k : pool.intern(k, true),
+                pool == null ? v : pool.intern(v, false)));
+        }
+
+        BoundedMap<String, ?> map = boundedMapOf(bounded);
+        String times = prefs.get(key + TTL_SUFFIX, null);
+
+        if (map.getAddedAt() != null && times != null) {
+            map.setAddedAt(gson().fromJson(times, TYPE_HASH_MAP_STR_LONG));
+        }
+
+        map.evictExpired();
+        return bounded;
+    }
+
+    /**
+     * For {@link PrefSettings#multiProcess()} - lock the user and / or global node the object's fields
+     * are stored in (always in that order, so two savers can't deadlock), and pull in other processes' changes.
+     */
+    private static List<Preferences> lockNodes(Object bindObj, String prefPath) {
+
+        boolean useUser = false;
+        boolean useSys = false;
+
+        for (AnnotationResult<Field> bindField : AnnotationFinder.findAnnotatedFields(bindObj, Pref.class)) {
+            Pref ann = (Pref) bindField.annotation;
+            if (!isNested(ann, bindField.element.getType())) {
+                useUser |= !ann.isGlobal();
+                useSys |= ann.isGlobal();
+            }
+        }
+
+        List<Preferences> nodes = new ArrayList<>(2);
+        if (useUser) {
+            nodes.add(getPrefs(false, prefPath));
+        }
+        if (useSys) {
+            nodes.add(getPrefs(true, prefPath));
+        }
+
+        return lockNodes(nodes, prefPath);
+    }
+
+    /**
+     * Lock the nodes in order, and pull in other processes' changes.
+     */
+    private static List<Preferences> lockNodes(List<Preferences> nodes, String prefPath) {
+
+        List<Preferences> locked = new ArrayList<>(nodes.size());
+
+        try {
+
+            for (Preferences prefs : nodes) {
+                NodeLock lock = NodeLock.of(prefs);
+                lock.lock();
+                locked.add(prefs);
+                syncFresh(prefs, lock.readStamp());
+            }
+
+        } catch (IOException | BackingStoreException e) {
+            unlockNodes(locked);
+            throw new IllegalStateException("Couldn't lock prefs node: " + prefPath, e);
+        }
+
+        return nodes;
+    }
+
+    private static void unlockNodes(List<Preferences> nodes) {
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            NodeLock.of(nodes.get(i)).unlock();
+        }
+    }
+
+    private static Map<Preferences, Long> readStamps(List<Preferences> nodes) {
+
+        Map<Preferences, Long> stamps = new HashMap<>();
+        for (Preferences prefs : nodes) {
+            stamps.put(prefs, prefs.getLong(STAMP_KEY, 0));
+        }
+
+        return stamps;
+    }
+
+    /**
+     * Tell other processes we've written to the locked nodes, and get it onto disk before anyone else can write.
+     * @param stamps each node's stamp when it was locked - replaced with the new ones
+     */
+    private static void stampNodes(List<Preferences> nodes, Map<Preferences, Long> stamps) throws BackingStoreException, IOException {
+
+        for (Preferences prefs : nodes) {
+            NodeLock lock = NodeLock.of(prefs);
+            long stamp = Math.max(stamps.get(prefs), lock.readStamp()) + 1;
+            prefs.putLong(STAMP_KEY, stamp);
+            syncWithRetry(prefs);
+            lock.writeStamp(stamp);
+            stamps.put(prefs, stamp);
+        }
+    }
+
+    /**
+     * Sync until the node has read in the last multiProcess save, going by the stamp in its lock file.
+     * The JDK's file store only re-reads nodes if no other process has synced the store since this JVM last did
+     * (see FileSystemPreferences.sync), so right after another process saves, the first sync just makes us
+     * the last one to sync, and the next one reads its changes.
+     * If the stamp never catches up, the node was cleared or rewritten without one - carry on with what's there.
+     */
+    private static void syncFresh(Preferences prefs, long lockStamp) throws BackingStoreException {
+        for (int attempt = 0; attempt < SYNC_ATTEMPTS; attempt++) {
+            syncWithRetry(prefs);
+            if (prefs.getLong(STAMP_KEY, 0) >= lockStamp) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The JDK's file store takes its own lock to sync, and gives up if another process holds it
+     * for too long, so back off and try again a few times.
+     */
+    private static void syncWithRetry(Preferences prefs) throws BackingStoreException {
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+
+                prefs.sync();
+                return;
+
+            } catch (BackingStoreException e) {
+
+                if (attempt >= SYNC_ATTEMPTS) {
+                    throw e;
+                }
+
+                try {
+                    Thread.sleep(attempt * 10L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * For {@link PrefSettings#multiProcess()} saves, when another process has saved the node since we last
+     * loaded or saved it. If that process changed this field and we didn't, take its value into our field
+     * rather than overwrite it. If we both changed it, ours wins.
+     * @return true if we took the stored value
+     */
+    private static boolean takeStored(Preferences prefs, String key, Field field, Object obj, Pref ann, String ours,
+        Map<Field, Long> valueHashes) throws Exception {
+
+        String stored = getStr(prefs, key, null);
+        Long base = valueHashes.get(field);
+
+        if (stored == null || base == null || base == BindState.hash(stored) || base != BindState.hash(ours)) {
+            return false;
+        }
+
+        field.set(obj, decodeField(prefs, field, obj, key, ann, stored));
+        valueHashes.put(field, BindState.hash(stored));
+        return true;
+    }
+
+    /**
+     * A field holds a nested settings object if its type isn't one we store as a value,
+     * and it has {@link Pref} fields of its own. It's saved in a child node named after the field.
+     */
+    static boolean isNested(Pref ann, Class<?> fieldType) {
+        return !ann.offHeap() && !ann.deltaLog() && !ann.perEntry() && !isBounded(ann)
+            && nestedTypes.computeIfAbsent(fieldType, type -> !isSupportedType(type)
+                && !type.isPrimitive()
+                && !Collection.class.isAssignableFrom(type)
+                && !Map.class.isAssignableFrom(type)
+                && AnnotationFinder.hasAnnotatedFields(type, Pref.class));
+    }
+
+    /**
+     * The node a nested object is stored in.
+     */
+    static String getChildPath(Preferences prefs, String key) {
+        String path = prefs.absolutePath();
+        String childPath = path.endsWith("/") ? path + key : path + "/" + key;
+        nestedPaths.add(childPath);
+        return childPath;
+    }
+
+    /**
+     * The nested object in the field. If it's null, and something was saved for it, a new one is created.
+     * @return the nested object, or null if there's nothing to load into it
+     */
+    private static Object getOrCreateNested(Field field, Object obj, String childPath)
+        throws ReflectiveOperationException, BackingStoreException {
+
+        Object nested = field.get(obj);
+
+        if (nested == null
+            && (Preferences.userRoot().nodeExists(childPath) || Preferences.systemRoot().nodeExists(childPath))) {
+
+            nested = newNested(field.getType());
+            field.set(obj, nested);
+        }
+
+        return nested;
+    }
+
+    static Object newNested(Class<?> type) {
+        try {
+
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Nested @Pref objects need a no-arg constructor: " + type.getName(), e);
+        }
     }
 
-    private static String getStr(Preferences prefs, String key, String defaultVal) {
-        return prefs.get(key, defaultVal);
-    }
+    /**
+     * A nested object was set to null - remove its nodes (and any nested under them).
+     */
+    private static void removeNested(String childPath) throws BackingStoreException {
+
+        if (Preferences.userRoot().nodeExists(childPath)) {
+            Preferences.userRoot().node(childPath).removeNode();
+        }
+
+        if (Preferences.systemRoot().nodeExists(childPath)) {
+            Preferences.systemRoot().node(childPath).removeNode();
+        }
+
+        userPrefMap.keySet().removeIf(path -> path.equals(childPath) || path.startsWith(childPath + "/"));
+        sysPrefMap.keySet().removeIf(path -> path.equals(childPath) || path.startsWith(childPath + "/"));
+    }
+
+    /**
+     * Get the live {@link PrefMap} for a {@link Pref#perEntry()} field.
+     * A map stored the old way, as one JSON value under the key, is moved into the entry node first.
+     * So is one stored under any of the field's {@link Pref#oldNames()}, either way.
+     * An empty entry node counts as missing, since listeners and old versions may have created one without entries.
+     * @param create create the entry node if it doesn't exist yet
+     * @return the map, or null if there's no entry node with entries and create is false
+     */
+    private static PrefMap getEntries(Preferences prefs, String key, Class<?> fieldType, Pref ann, boolean create)
+        throws BackingStoreException, IOException {
+
+        checkEntries(fieldType, ann);
+
+        String nodeName = key + ENTRY_NODE_SUFFIX;
+        moveEntries(prefs, key, nodeName);
+
+        for (int i = 0; i < ann.oldNames().length && !hasEntries(prefs, nodeName); i++) {
+            moveEntries(prefs, ann.oldNames()[i], nodeName);
+        }
+
+        if (!create && !hasEntries(prefs, nodeName)) {
+            return null;
+        }
+
+        return new PrefMap(prefs.node(nodeName));
+    }
+
+    private static boolean hasEntries(Preferences prefs, String nodeName) throws BackingStoreException {
+        return prefs.nodeExists(nodeName) && prefs.node(nodeName).keys().length > 0;
+    }
+
+    /**
+     * Move entries stored under a name - as one JSON value, or in that name's entry node - into the entry node.
+     */
+    private static void moveEntries(Preferences prefs, String fromName, String nodeName) throws BackingStoreException, IOException {
+
+        String json = getStr(prefs, fromName, null);
+
+        if (json != null) {
+            Preferences node = prefs.node(nodeName);
+            readJsonStringMap(json, node::put);
+            prefs.remove(fromName);
+        }
+
+        String fromNodeName = fromName + ENTRY_NODE_SUFFIX;
+
+        if (!fromNodeName.equals(nodeName) && hasEntries(prefs, fromNodeName)) {
+
+            Preferences fromNode = prefs.node(fromNodeName);
+            Preferences node = prefs.node(nodeName);
+
+            try {
+
+                for (String entryKey : fromNode.keys()) {
+                    node.put(entryKey, fromNode.get(entryKey, ""));
+                }
+
+                fromNode.removeNode();
+
+            } catch (IllegalStateException e) {
+                // Another load (e.g. a snapshot's) already moved them, and removed the node.
+            }
+        }
+    }
+
+    /**
+     * Save a {@link Pref#perEntry()} Map. If the field holds a plain Map, only the entries that
+     * differ from the node are written, and the field is bound to the node's {@link PrefMap}.
+     */
+    private static void setEntries(Preferences prefs, String key, Field field, Object obj, Pref ann, Map<String, String> val)
+        throws BackingStoreException, IOException, IllegalAccessException {
+
+        PrefMap entries = getEntries(prefs, key, field.getType(), ann, true);
+        Preferences node = entries.getNode();
+
+        if (val instanceof PrefMap && ((PrefMap) val).getNode() == node) {
+            // Already written through.
+            return;
+        }
+
+        // Check everything first, so a bad entry can't leave the node half written.
+        val.forEach((entryKey, entryVal) -> {
+            if (entryKey == null || entryVal == null) {
+                throw new IllegalArgumentException("perEntry maps can't hold null keys or values: " + key);
+            } else if (entryKey.length() > Preferences.MAX_KEY_LENGTH) {
+                throw new IllegalArgumentException("perEntry map key is longer than " + Preferences.MAX_KEY_LENGTH + " chars: " + entryKey);
+            } else if (entryVal.length() > Preferences.MAX_VALUE_LENGTH) {
+                throw new IllegalArgumentException("perEntry map value is longer than " + Preferences.MAX_VALUE_LENGTH + " chars, for key: " + entryKey);
+            }
+        });
+
+        for (String entryKey : node.keys()) {
+            if (!val.containsKey(entryKey)) {
+                node.remove(entryKey);
+            }
+        }
+
+        // PrefMap.put() skips unchanged values.
+        val.forEach(entries::put);
+        field.set(obj, entries);
+    }
+
+    /**
+     * Read a {@link Pref#perEntry()} Map's entries into the map, without moving an old-style value
+     * or one stored under an old name. Empty entry nodes count as missing, like in getEntries().
+     * @return false if nothing is stored
+     */
+    private static boolean readEntries(Preferences prefs, String key, Pref ann, Map<String, String> into)
+        throws BackingStoreException, IOException {
+
+        if (hasEntries(prefs, key + ENTRY_NODE_SUFFIX)) {
+            into.putAll(new PrefMap(prefs.node(key + ENTRY_NODE_SUFFIX)));
+            return true;
+        }
+
+        for (int i = -1; i < ann.oldNames().length; i++) {
+
+            String name = i < 0 ? key : ann.oldNames()[i];
+            String json = getStr(prefs, name, null);
+
+            if (json != null) {
+                readJsonStringMap(json, into::put);
+                return true;
+            } else if (hasEntries(prefs, name + ENTRY_NODE_SUFFIX)) {
+                into.putAll(new PrefMap(prefs.node(name + ENTRY_NODE_SUFFIX)));
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * perEntry maps are moved, not decoded, so there's no stored value to run a {@link Pref#migration()} on.
+     */
+    private static void checkEntries(Class<?> fieldType, Pref ann) {
+
+        if (fieldType != Map.class) {
+            throw new IllegalArgumentException("perEntry fields must be declared as a Map, not: " + fieldType.getName());
+        }
+
+        if (ann.migration() != PrefMigration.None.class) {
+            throw new IllegalArgumentException("perEntry fields can't have a migration, only oldNames: " + ann);
+        }
+    }
+
+    /**
+     * @return true for maps, false for sets
+     */
+    private static boolean checkDeltaType(Class<?> fieldType) {
+
+        if (fieldType.isAssignableFrom(HashSet.class)) {
+            return false;
+        } else if (fieldType.isAssignableFrom(HashMap.class)) {
+            return true;
+        }
+
+        throw new IllegalArgumentException("deltaLog fields must be a Set or Map, not: " + fieldType.getName());
+    }
+
+    private static String deltaBaseHash(String json) {
+        return json.length() + ":" + Integer.toHexString(json.hashCode());
+    }
+
+    private static int deltaSize(Object val) {
+        return val instanceof Map ? ((Map<?, ?>) val).size() : ((Set<?>) val).size();
+    }
+
+    private static Object deltaCopy(Object val) {
+        return val instanceof Map ? new HashMap<>((Map<?, ?>) val) : new HashSet<>((Set<?>) val);
+    }
+
+    /**
+     * Log ops are ["+", elem], ["-", elem], ["=", key, val], and ["-", key].
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String[]> deltaDiff(Object lastVal, Object val) {
+
+        List<String[]> ops = new ArrayList<>();
 
-    private static int getInt(Preferences prefs, String key, int defaultVal) {
-        return prefs.getInt(key, defaultVal);
-    }
+        if (val instanceof Map) {
 
-    private static long getLong(Preferences prefs, String key, long defaultVal) {
-        return prefs.getLong(key, defaultVal);
-    }
+            Map<String, String> lastMap = (Map<String, String>) lastVal;
+            Map<String, String> map = (Map<String, String>) val;
 
-    private static boolean getBool(Preferences prefs, String key, boolean defaultVal) {
-        return prefs.getBoolean(key, defaultVal);
-    }
+            lastMap.forEach((k, v) -> {
+                if (map.get(k) == null) {
+                    ops.add(new String[] { "-", k });
+                }
+            });
 
-    private static <T> T getJsonObj(Preferences prefStore, String key, T defaultVal, Type valType) {
+            map.forEach((k, v) -> {
+                if (v != null && !v.equals(lastMap.get(k))) {
+                    ops.add(new String[] { "=", k, v });
+                }
+            });
 
-        String json = prefStore.get(key, null);
-        if (json == null) {
-            return defaultVal;
+        } else {
+
+            Set<String> lastSet = (Set<String>) lastVal;
+            Set<String> set = (Set<String>) val;
+
+            lastSet.forEach(e -> {
+                if (!set.contains(e)) {
+                    ops.add(new String[] { "-", e });
+                }
+            });
+
+            set.forEach(e -> {
+                if (!lastSet.contains(e)) {
+                    ops.add(new String[] { "+", e });
+                }
+            });
         }
 
-        return gson().fromJson(json, valType);
+        return ops;
     }
 
-    private static LinkedList<String> getLinkedList(Preferences prefs, String key, LinkedList<String> defaultVal) {
-        return getJsonObj(prefs, key, defaultVal, TYPE_LINKED_LIST_STR);
-    }
+    @SuppressWarnings("unchecked")
+    private static void deltaApply(Object val, String[] op) {
 
-    private static ArrayList<String> getArrayList(Preferences prefs, String key, ArrayList<String> defaultVal) {
-        return getJsonObj(prefs, key, defaultVal, TYPE_ARRAY_LIST_STR);
-    }
+        if (val instanceof Map) {
 
-    private static HashMap<String, String> getHashMap(Preferences prefs, String key, HashMap<String, String> defaultVal) {
-        return getJsonObj(prefs, key, defaultVal, TYPE_HASH_MAP_STR_STR);
-    }
+            Map<String, String> map = (Map<String, String>) val;
+            if ("=".equals(op[0])) {
+                map.put(op[1], op[2]);
+            } else {
+                map.remove(op[1]);
+            }
+
+        } else {
 
-    private static HashSet<String> getHashSet(Preferences prefs, String key, HashSet<String> defaultVal) {
-        return getJsonObj(prefs, key, defaultVal, TYPE_HASH_SET_STR);
+            Set<String> set = (Set<String>) val;
+            if ("+".equals(op[0])) {
+                set.add(op[1]);
+            } else {
+                set.remove(op[1]);
+            }
+        }
     }
 
     /**
@@ -170,10 +1238,23 @@ public enum Prefs {
      */
     public static void deleteAllPrefs() {
 
+        // Otherwise loads would see the empty nodes, and create nested objects for them.
+        for (String childPath : new ArrayList<>(nestedPaths)) {
+            try {
+
+                removeNested(childPath);
+                nestedPaths.remove(childPath);
+
+            } catch (BackingStoreException e) {
+                e.printStackTrace();
+            }
+        }
+
         userPrefMap.values().forEach(prefs -> {
             try {
 
                 Arrays.stream(prefs.keys()).forEach(prefs::remove);
+                removeChildNodes(prefs);
 
             } catch (BackingStoreException e) {
                 e.printStackTrace();
@@ -184,6 +1265,7 @@ public enum Prefs {
             try {
 
                 Arrays.stream(prefs.keys()).forEach(prefs::remove);
+                removeChildNodes(prefs);
 
             } catch (BackingStoreException e) {
                 e.printStackTrace();
@@ -191,6 +1273,18 @@ public enum Prefs {
         });
     }
 
+    /**
+     * Remove the delta log and per-entry child nodes we created.
+     */
+    private static void removeChildNodes(Preferences prefs) throws BackingStoreException {
+
+        for (String child : prefs.childrenNames()) {
+            if (child.endsWith(DELTA_LOG_SUFFIX) || child.endsWith(ENTRY_NODE_SUFFIX)) {
+                prefs.node(child).removeNode();
+            }
+        }
+    }
+
     /**
      * Debug the prefs state.
      */
@@ -230,17 +1324,27 @@ public enum Prefs {
         }
     }
 
-    private static void walkObjectPrefs(Object bindObj, PrefWalker prefWalker) {
+    /**
+     * @return the total length of the stored values the walker read or wrote, for stats
+     */
+    private static long walkObjectPrefs(Object bindObj, String prefPath, int depth, PrefWalker prefWalker) {
 
         if (bindObj == null) {
             throw new IllegalArgumentException("You can't save a null obj.");
         }
 
-        // Determine the prefPath from the object's package, and @PrefSettings.
-        String prefPath = getPrefPath(bindObj);
+        if (depth > MAX_NESTING) {
+            throw new IllegalStateException("@Pref objects are nested too deep - is there a cycle? " + bindObj.getClass().getName());
+        }
+
+        // Determine the prefPath from the object's package, and @PrefSettings, unless it's a nested object.
+        if (prefPath == null) {
+            prefPath = getPrefPath(bindObj);
+        }
 
         // Look up all fields annotated with @Pref.
         List<AnnotationResult<Field>> bindFields = AnnotationFinder.findAnnotatedFields(bindObj, Pref.class);
+        long storedLength = 0;
 
         for (AnnotationResult<Field> bindField : bindFields) {
             try {
@@ -249,7 +1353,7 @@ public enum Prefs {
                 Object obj = bindField.obj;
                 Class<?> type = f.getType();
                 Pref ann = (Pref) bindField.annotation;
-                String key = With.str(ann.name()).ifBlank(f.getName());
+                String key = getPrefKey(f, ann);
                 boolean useSys = ann.isGlobal();
                 Preferences pref = getPrefs(useSys, prefPath);
                 String defaultVal = ann.defaultVal();
@@ -263,7 +1367,7 @@ public enum Prefs {
 
                 try {
 
-                    prefWalker.walkPref(pref, f, type, obj, key, defaultVal);
+                    storedLength += prefWalker.walkPref(pref, f, type, obj, key, defaultVal, ann);
 
                 } finally {
                     if (!wasAccessible) {
@@ -276,18 +1380,24 @@ public enum Prefs {
             }
 
         } // end for each bound field found.
+
+        return storedLength;
     }
 
     @FunctionalInterface
     private interface PrefWalker {
 
-        void walkPref(
+        /**
+         * @return the length of the stored value read or written, or 0 if none
+         */
+        long walkPref(
             Preferences prefs,
             Field annField,
             Class<?> annFieldType,
             Object annObj,
             String prefKeyName,
-            String defaultVal
+            String defaultVal,
+            Pref ann
         ) throws Exception;
     }
 
@@ -299,7 +1409,148 @@ public enum Prefs {
      */
     public static void save(Object bindObj) {
 
-        walkObjectPrefs(bindObj, (prefs, annField, annFieldType, annObj, prefKeyName, defaultVal) -> {
+        PrefsSaveEvent event = JFR_EVENTS ? new PrefsSaveEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        // Measuring costs an extra read per field, so only do it when the event is actually recorded.
+        long storedLength = saveObject(bindObj, null, 0, event != null && event.isEnabled());
+
+        if (event != null && event.shouldCommit()) {
+            event.path = getPrefPath(bindObj);
+            event.settingsClass = bindObj.getClass();
+            event.fieldCount = AnnotationFinder.findAnnotatedFields(bindObj, Pref.class).size();
+            event.encodedBytes = storedLength;
+            event.commit();
+        }
+    }
+
+    /**
+     * The write path for {@link PrefKey} - stores one key the way {@link #save(Object)} would.
+     * An older version's node is migrated first, unchanged values aren't rewritten, old names are removed,
+     * {@link PrefSettings#multiProcess()} nodes are locked (and synced) around it, and a save event is recorded.
+     * @param update given the stored value, returns the value to store, or null to remove it.
+     * Runs under the node's lock, so read-modify-writes are atomic.
+     * @return what update returned
+     */
+    static String saveKey(Preferences prefs, Class<?> settingsClass, String key, Pref ann, UnaryOperator<String> update) {
+
+        PrefsSaveEvent event = JFR_EVENTS ? new PrefsSaveEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        String prefPath = getPrefPath(settingsClass);
+        List<Preferences> nodes = isMultiProcess(settingsClass)
+            ? lockNodes(Collections.singletonList(prefs), prefPath)
+            : Collections.<Preferences>emptyList();
+
+        String val = null;
+
+        try {
+
+            synchronized (prefs) {
+
+                // Our value is written in the current format, so the node must be current too.
+                migrateNode(prefs, settingsClass, ann.isGlobal());
+
+                String current = getStr(prefs, key, null);
+                val = update.apply(getSavedVal(prefs, key, ann, getPrefVersion(settingsClass)));
+                boolean changed = !Objects.equals(current, val);
+
+                if (val == null) {
+                    prefs.remove(key);
+                } else {
+                    setStr(prefs, key, val);
+                }
+
+                for (String oldName : ann.oldNames()) {
+                    if (prefs.get(oldName, null) != null) {
+                        prefs.remove(oldName);
+                        changed = true;
+                    }
+                }
+
+                if (changed && !nodes.isEmpty()) {
+                    stampNodes(nodes, readStamps(nodes));
+                }
+            }
+
+        } catch (BackingStoreException | IOException e) {
+            // The JDK will still write our change on its next background sync.
+            e.printStackTrace();
+        } finally {
+            unlockNodes(nodes);
+        }
+
+        if (event != null && event.shouldCommit()) {
+            event.path = prefPath;
+            event.settingsClass = settingsClass;
+            event.fieldCount = 1;
+            event.encodedBytes = val == null ? 0 : val.length();
+            event.commit();
+        }
+
+        return val;
+    }
+
+    /**
+     * Save the object, and any nested {@link Pref} objects into child nodes.
+     * @param prefPath where to save it, or null to work it out from the class
+     * @param measure add up the stored lengths, for stats
+     * @return the total length of the values stored, if measuring
+     */
+    private static long saveObject(Object bindObj, String prefPath, int depth, boolean measure) {
+
+        if (!isMultiProcess(bindObj)) {
+            return saveFields(bindObj, prefPath, depth, measure, null);
+        }
+
+        List<Preferences> nodes = lockNodes(bindObj, prefPath == null ? getPrefPath(bindObj) : prefPath);
+
+        try {
+
+            Map<Preferences, Long> stamps = readStamps(nodes);
+            long storedLength = saveFields(bindObj, prefPath, depth, measure, stamps);
+
+            stampNodes(nodes, stamps);
+            BindState.of(bindObj).nodeStamps.putAll(stamps);
+
+            return storedLength;
+
+        } catch (BackingStoreException | IOException e) {
+            // The JDK will still write our changes on its next background sync.
+            e.printStackTrace();
+            return 0;
+        } finally {
+            unlockNodes(nodes);
+        }
+    }
+
+    /**
+     * @param stamps for {@link PrefSettings#multiProcess()} - each locked node's stamp, read after syncing; otherwise null
+     */
+    private static long saveFields(Object bindObj, String prefPath, int depth, boolean measure, Map<Preferences, Long> stamps) {
+
+        int version = getPrefVersion(bindObj);
+        Map<Field, Long> valueHashes = isSkipUnchanged(bindObj) || stamps != null ? BindState.of(bindObj).valueHashes : null;
+        Map<Preferences, Long> baseStamps = stamps != null ? BindState.of(bindObj).nodeStamps : null;
+
+        return walkObjectPrefs(bindObj, prefPath, depth, (prefs, annField, annFieldType, annObj, prefKeyName, defaultVal, ann) -> {
+
+            if (isNested(ann, annFieldType)) {
+
+                Object nested = annField.get(annObj);
+                String childPath = getChildPath(prefs, prefKeyName);
+
+                if (nested == null) {
+                    removeNested(childPath);
+                    return 0;
+                }
+
+                return saveObject(nested, childPath, depth + 1, measure);
+            }
 
             // Deal with a null value:
 
@@ -313,32 +1564,75 @@ public enum Prefs {
                     prefs.remove(prefKeyName);
                 }
 
+                if (ann.deltaLog() && prefs.nodeExists(prefKeyName + DELTA_LOG_SUFFIX)) {
+                    prefs.node(prefKeyName + DELTA_LOG_SUFFIX).removeNode();
+                }
+
+                if (ann.eviction() == Eviction.TTL) {
+                    prefs.remove(prefKeyName + TTL_SUFFIX);
+                }
+
+                if (ann.perEntry() && prefs.nodeExists(prefKeyName + ENTRY_NODE_SUFFIX)) {
+                    prefs.node(prefKeyName + ENTRY_NODE_SUFFIX).removeNode();
+                }
+
+                if (valueHashes != null) {
+                    valueHashes.remove(annField);
+                }
+
             } else {
 
                 // Only try to save non-null values.
 
-                if (annFieldType == String.class) {
-                    setStr(prefs, prefKeyName, (String) annField.get(annObj));
-                } else if (annFieldType == Integer.class || annFieldType == Integer.TYPE) {
-                    setInt(prefs, prefKeyName, annField.getInt(annObj));
-                } else if (annFieldType == Long.class || annFieldType == Long.TYPE) {
-                    setLong(prefs, prefKeyName, annField.getLong(annObj));
-                } else if (annFieldType == Boolean.class || annFieldType == Boolean.TYPE) {
-                    setBool(prefs, prefKeyName, annField.getBoolean(annObj));
-                } else if (annFieldType == LinkedList.class) {
-                    setLinkedList(prefs, prefKeyName, (LinkedList<String>) annField.get(annObj));
-                } else if (annFieldType == ArrayList.class || annFieldType == List.class) {
-                    setArrayList(prefs, prefKeyName, (ArrayList<String>) annField.get(annObj));
-                } else if (annFieldType == HashMap.class || annFieldType == Map.class) {
-                    setHashMap(prefs, prefKeyName, (HashMap<String, String>) annField.get(annObj));
-                } else if (annFieldType == HashSet.class || annFieldType == Set.class) {
-                    setHashSet(prefs, prefKeyName, (HashSet<String>) annField.get(annObj));
+                if (ann.offHeap()) {
+                    // Any Set / Map encodes the same way, sorted or not.
+                    setJsonObj(prefs, prefKeyName, annField.get(annObj));
+                } else if (ann.deltaLog()) {
+                    setDelta(prefs, prefKeyName, annField, annObj, annField.get(annObj));
+                } else if (isBounded(ann)) {
+                    setBounded(prefs, prefKeyName, annField, annObj, ann);
+                } else if (ann.perEntry()) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, String> entries = (Map<String, String>) annField.get(annObj);
+                    setEntries(prefs, prefKeyName, annField, annObj, ann, entries);
                 } else {
-                    throw new IllegalArgumentException("Unknown type: " + annFieldType.getName());
+
+                    String encoded = encodeValue(annFieldType, annField.get(annObj));
+
+                    // If another process saved this node since we last saw it, don't overwrite its changes with our stale values.
+                    boolean otherWriter = stamps != null && !stamps.get(prefs).equals(baseStamps.get(prefs));
+
+                    if (!otherWriter || !takeStored(prefs, prefKeyName, annField, annObj, ann, encoded, valueHashes)) {
+
+                        setStr(prefs, prefKeyName, encoded);
+
+                        // The field now matches what's stored, so a load can skip it.
+                        if (valueHashes != null) {
+                            valueHashes.put(annField, BindState.hash(encoded));
+                        }
+                    }
+                }
+
+            }
+
+            // This field is now stored in the current format, so clean up after older versions.
+
+            for (String oldName : ann.oldNames()) {
+
+                if (prefs.get(oldName, null) != null) {
+                    prefs.remove(oldName);
+                }
+
+                if (ann.perEntry() && prefs.nodeExists(oldName + ENTRY_NODE_SUFFIX)) {
+                    prefs.node(oldName + ENTRY_NODE_SUFFIX).removeNode();
                 }
+            }
 
+            if (version > 0 && prefs.getInt(VERSION_KEY, 0) != version) {
+                prefs.putInt(VERSION_KEY, version);
             }
 
+            return !measure || isNull ? 0 : getStr(prefs, prefKeyName, "").length();
         });
     }
 
@@ -350,36 +1644,302 @@ public enum Prefs {
      */
     public static void load(Object bindObj) {
 
-        walkObjectPrefs(bindObj, (prefs, annField, annFieldType, annObj, prefKeyName, defaultVal) -> {
+        PrefsLoadEvent event = JFR_EVENTS ? new PrefsLoadEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+
+        long storedLength = loadObject(bindObj, null, 0);
+
+        if (event != null && event.shouldCommit()) {
+            event.path = getPrefPath(bindObj);
+            event.settingsClass = bindObj.getClass();
+            event.fieldCount = AnnotationFinder.findAnnotatedFields(bindObj, Pref.class).size();
+            event.encodedBytes = storedLength;
+            event.commit();
+        }
+    }
+
+    /**
+     * Load the object, and any nested {@link Pref} objects from child nodes.
+     * Nested objects that are null are created, if anything has been saved for them.
+     * @param prefPath where to load it from, or null to work it out from the class
+     * @return the total length of the values read
+     */
+    private static long loadObject(Object bindObj, String prefPath, int depth) {
+
+        if (!isMultiProcess(bindObj)) {
+            return loadFields(bindObj, prefPath, depth, false);
+        }
+
+        // Lock so we never see half of another process's save.
+        List<Preferences> nodes = lockNodes(bindObj, prefPath == null ? getPrefPath(bindObj) : prefPath);
+
+        try {
+
+            Map<Preferences, Long> stamps = readStamps(nodes);
+            long storedLength = loadFields(bindObj, prefPath, depth, true);
+            BindState.of(bindObj).nodeStamps.putAll(stamps);
+            return storedLength;
 
-            boolean isSaved = getStr(prefs, prefKeyName, null) != null;
+        } finally {
+            unlockNodes(nodes);
+        }
+    }
+
+    /**
+     * @param multiProcess remember what we loaded, for merging later saves - see {@link PrefSettings#multiProcess()}
+     */
+    private static long loadFields(Object bindObj, String prefPath, int depth, boolean multiProcess) {
+
+        int version = getPrefVersion(bindObj);
+        boolean skipUnchanged = isSkipUnchanged(bindObj);
+        Map<Field, Long> valueHashes = skipUnchanged || multiProcess ? BindState.of(bindObj).valueHashes : null;
+
+        return walkObjectPrefs(bindObj, prefPath, depth, (prefs, annField, annFieldType, annObj, prefKeyName, defaultVal, ann) -> {
+
+            if (isNested(ann, annFieldType)) {
+                Object nested = getOrCreateNested(annField, annObj, getChildPath(prefs, prefKeyName));
+                return nested == null ? 0 : loadObject(nested, getChildPath(prefs, prefKeyName), depth + 1);
+            }
+
+            // Per-entry maps aren't decoded, just bound to their node.
+            if (ann.perEntry()) {
+                PrefMap entries = getEntries(prefs, prefKeyName, annFieldType, ann, false);
+                if (entries != null) {
+                    annField.set(annObj, entries);
+                }
+                return 0;
+            }
+
+            String savedVal = getSavedVal(prefs, prefKeyName, ann, version);
 
             // Don't mess with this field's existing setup if there's no saved value.
-            if (!isSaved) {
-                return;
+            if (savedVal == null) {
+                return 0;
             }
 
-            if (annFieldType == String.class) {
-                annField.set(annObj, getStr(prefs, prefKeyName, defaultVal));
-            } else if (annFieldType == Integer.class || annFieldType == Integer.TYPE) {
-                annField.setInt(annObj, getInt(prefs, prefKeyName, defaultVal.isEmpty() ? 0 : Integer.parseInt(defaultVal)));
-            } else if (annFieldType == Long.class || annFieldType == Long.TYPE) {
-                annField.setLong(annObj, getLong(prefs, prefKeyName, defaultVal.isEmpty() ? 0 : Long.parseLong(defaultVal)));
-            } else if (annFieldType == Boolean.class || annFieldType == Boolean.TYPE) {
-                boolean defaultBool = defaultVal.isEmpty() ? false : Boolean.parseBoolean(defaultVal);
-                annField.setBoolean(annObj, getBool(prefs, prefKeyName, defaultBool));
-            } else if (annFieldType == LinkedList.class) {
-                annField.set(annObj, getLinkedList(prefs, prefKeyName, null));
-            } else if (annFieldType == ArrayList.class || annFieldType == List.class) {
-                annField.set(annObj, getArrayList(prefs, prefKeyName, null));
-            } else if (annFieldType == HashMap.class || annFieldType == Map.class) {
-                annField.set(annObj, getHashMap(prefs, prefKeyName, null));
-            } else if (annFieldType == HashSet.class || annFieldType == Set.class) {
-                annField.set(annObj, getHashSet(prefs, prefKeyName, null));
-            } else {
-                throw new IllegalArgumentException("Not sure how to unbind: " + annFieldType);
+            // Skip values that haven't changed since we last loaded or saved them.
+            // Delta logs and bounded collections keep more state than the value itself, so they're always reloaded.
+            boolean canHash = valueHashes != null && !ann.deltaLog() && !isBounded(ann);
+            Long hash = canHash ? BindState.hash(savedVal) : null;
+
+            if (skipUnchanged && canHash && hash.equals(valueHashes.get(annField))) {
+                return 0;
+            }
+
+            if (!ann.inPlace() || !loadInPlace(annField.get(annObj), annFieldType, ann, savedVal)) {
+                annField.set(annObj, decodeField(prefs, annField, annObj, prefKeyName, ann, savedVal));
+            }
+
+            if (canHash) {
+                valueHashes.put(annField, hash);
+            }
+
+            return savedVal.length();
+        });
+    }
+
+    /**
+     * Load the object's state with user values overriding global (system) ones, and
+     * the {@link Pref#defaultVal()} used when neither is set - regardless of {@link Pref#isGlobal()}.
+     * See: {@link #layered(Class)}.
+     * @param onlyKey only load the field(s) stored under this key, or null for all of them
+     */
+    static void loadLayered(Object bindObj, String onlyKey) {
+        loadLayered(bindObj, getPrefPath(bindObj), onlyKey, 0);
+    }
+
+    private static void loadLayered(Object bindObj, String prefPath, String onlyKey, int depth) {
+
+        int version = getPrefVersion(bindObj);
+        Preferences userPrefs = getPrefs(false, prefPath);
+        Preferences sysPrefs = getPrefs(true, prefPath);
+
+        walkObjectPrefs(bindObj, prefPath, depth, (prefs, annField, annFieldType, annObj, prefKeyName, defaultVal, ann) -> {
+
+            if (onlyKey != null && !onlyKey.equals(prefKeyName)) {
+                return 0;
+            }
+
+            if (isNested(ann, annFieldType)) {
+
+                String childPath = getChildPath(userPrefs, prefKeyName);
+                Object nested = getOrCreateNested(annField, annObj, childPath);
+
+                if (nested != null) {
+                    loadLayered(nested, childPath, null, depth + 1);
+                }
+
+                return 0;
+            }
+
+            // Per-entry maps are layered entry by entry.
+            if (ann.perEntry()) {
+
+                checkEntries(annFieldType, ann);
+                Map<String, String> entries = new HashMap<>();
+                boolean found = readEntries(sysPrefs, prefKeyName, ann, entries);
+                found |= readEntries(userPrefs, prefKeyName, ann, entries);
+
+                if (found) {
+                    annField.set(annObj, entries);
+                } else if (!defaultVal.isEmpty()) {
+                    annField.set(annObj, decodeValue(annFieldType, defaultVal, defaultVal));
+                }
+
+                return 0;
+            }
+
+            Preferences layer = userPrefs;
+            String savedVal = getSavedVal(userPrefs, prefKeyName, ann, version);
+
+            if (savedVal == null) {
+                layer = sysPrefs;
+                savedVal = getSavedVal(sysPrefs, prefKeyName, ann, version);
+            }
+
+            if (savedVal != null) {
+                annField.set(annObj, decodeField(layer, annField, annObj, prefKeyName, ann, savedVal));
+                return savedVal.length();
+            } else if (!defaultVal.isEmpty()) {
+                annField.set(annObj, decodeField(layer, annField, annObj, prefKeyName, ann, defaultVal));
+            }
+
+            return 0;
+        });
+    }
+
+    /**
+     * Decode a field's saved value, however the field is configured to be stored.
+     */
+    private static Object decodeField(Preferences prefs, Field field, Object obj, String key, Pref ann, String savedVal) throws Exception {
+
+        Class<?> type = field.getType();
+        Object val;
+
+        boolean isJson = ann.offHeap() || ann.deltaLog() || isBounded(ann) || isJsonType(type);
+        PrefsCodecEvent event = isJson ? beginCodecEvent() : null;
+
+        if (ann.offHeap()) {
+            val = getOffHeap(type, savedVal);
+        } else if (ann.deltaLog()) {
+            val = getDelta(prefs, key, field, obj, savedVal);
+        } else if (isBounded(ann)) {
+            val = getBounded(prefs, key, type, ann, savedVal);
+        } else {
+            val = decodeValue(type, savedVal, ann.defaultVal());
+        }
+
+        endCodecEvent(event, false, type, savedVal);
+        return val;
+    }
+
+    /**
+     * The name a field is stored under - {@link Pref#name()}, or the field name.
+     */
+    static String getPrefKey(Field field, Pref ann) {
+        return With.ifBlank(ann.name(), field.getName());
+    }
+
+    /**
+     * The field's stored value, migrated if the node was saved by an older version of the class.
+     * Falls back to the field's {@link Pref#oldNames()} if nothing is stored under its current name.
+     * See: {@link PrefSettings#version()}, {@link Pref#oldNames()}, {@link Pref#migration()}.
+     * @return null if there's no saved value
+     */
+    static String getSavedVal(Preferences prefs, String key, Pref ann, int version) {
+
+        String savedVal = getStr(prefs, key, null);
+
+        // Old names are read whenever the current one is missing, whatever the version -
+        // saves remove them, so this may be the only copy.
+        for (int i = 0; savedVal == null && i < ann.oldNames().length; i++) {
+            savedVal = getStr(prefs, ann.oldNames()[i], null);
+        }
+
+        int nodeVersion = version == 0 ? 0 : prefs.getInt(VERSION_KEY, 0);
+        if (savedVal == null || nodeVersion >= version || ann.migration() == PrefMigration.None.class) {
+            return savedVal;
+        }
+
+        PrefMigration migration = migrations.computeIfAbsent(ann.migration(), migrationClass -> {
+            try {
+                return migrationClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("PrefMigration needs a public no-arg constructor: " + migrationClass.getName(), e);
             }
         });
+
+        return migration.migrate(savedVal, nodeVersion);
+    }
+
+    /**
+     * @return true if the obj's class has {@link PrefSettings#multiProcess()} set (false if obj is null)
+     */
+    private static boolean isMultiProcess(Object obj) {
+        return obj != null && isMultiProcess(obj.getClass());
+    }
+
+    private static boolean isMultiProcess(Class<?> objClass) {
+        List<Annotation> settings = AnnotationFinder.findAnnotatedClass(objClass, PrefSettings.class);
+        return !settings.isEmpty() && ((PrefSettings) settings.get(0)).multiProcess();
+    }
+
+    /**
+     * @return true if the obj's class has {@link PrefSettings#skipUnchanged()} set
+     */
+    private static boolean isSkipUnchanged(Object obj) {
+        List<Annotation> settings = AnnotationFinder.findAnnotatedClass(obj, PrefSettings.class);
+        return !settings.isEmpty() && ((PrefSettings) settings.get(0)).skipUnchanged();
+    }
+
+    /**
+     * @return the obj's {@link PrefSettings#version()}, or 0 if it doesn't have one (or is null)
+     */
+    private static int getPrefVersion(Object obj) {
+        return obj == null ? 0 : getPrefVersion(obj.getClass());
+    }
+
+    static int getPrefVersion(Class<?> objClass) {
+        List<Annotation> settings = AnnotationFinder.findAnnotatedClass(objClass, PrefSettings.class);
+        return settings.isEmpty() ? 0 : ((PrefSettings) settings.get(0)).version();
+    }
+
+    /**
+     * Bring an older node up to the class's current {@link PrefSettings#version()} in place - move values
+     * stored under {@link Pref#oldNames()} and run {@link Pref#migration()}s - then mark it current.
+     * For writers like {@link PrefKey} that only touch one value: marking the node current without this
+     * would stop its other values from ever being migrated.
+     * @param isGlobal which of the class's fields are stored in this node
+     */
+    static void migrateNode(Preferences prefs, Class<?> settingsClass, boolean isGlobal) {
+
+        int version = getPrefVersion(settingsClass);
+        if (version == 0 || prefs.getInt(VERSION_KEY, 0) >= version) {
+            return;
+        }
+
+        for (AnnotationResult<Field> bindField : AnnotationFinder.findAnnotatedClassFields(settingsClass, Pref.class)) {
+
+            Pref ann = (Pref) bindField.annotation;
+            if (ann.isGlobal() != isGlobal || isNested(ann, bindField.element.getType())) {
+                continue;
+            }
+
+            String key = getPrefKey(bindField.element, ann);
+            String savedVal = getSavedVal(prefs, key, ann, version);
+
+            if (savedVal != null) {
+                setStr(prefs, key, savedVal);
+            }
+
+            for (String oldName : ann.oldNames()) {
+                prefs.remove(oldName);
+            }
+        }
+
+        prefs.putInt(VERSION_KEY, version);
     }
 
     /**
@@ -387,9 +1947,13 @@ public enum Prefs {
      * Will throw if we can't determine a legal prefs path.
      */
     private static String getPrefPath(Object obj) {
+        return getPrefPath(obj.getClass());
+    }
+
+    static String getPrefPath(Class<?> objClass) {
 
         // Check for a custom path.
-        List<Annotation> customNames = AnnotationFinder.findAnnotatedClass(obj, PrefSettings.class);
+        List<Annotation> customNames = AnnotationFinder.findAnnotatedClass(objClass, PrefSettings.class);
 
         if (!customNames.isEmpty()) {
 
@@ -409,20 +1973,29 @@ public enum Prefs {
         }
 
         // No custom name, so use the package.
-        String pkg = obj.getClass().getPackage().getName();
+        String pkg = objClass.getPackage().getName();
 
         if (pkg == null || pkg.isEmpty()) {
-            throw new IllegalStateException("Invalid Prefs path - if you want to use Prefs on a class in the default package, please specify a path via the @PrefSettings annotation, thanks! BTW I'm referring to the class: " + obj.getClass().getName());
+            throw new IllegalStateException("Invalid Prefs path - if you want to use Prefs on a class in the default package, please specify a path via the @PrefSettings annotation, thanks! BTW I'm referring to the class: " + objClass.getName());
         }
 
         if (!pkg.contains(".")) {
-            throw new IllegalStateException("Invalid Prefs path - your class package is really short. Please specify an appropriate prefs path via the @PrefSettings annotation, thanks! BTW I'm referring to the class: " + obj.getClass().getName());
+            throw new IllegalStateException("Invalid Prefs path - your class package is really short. Please specify an appropriate prefs path via the @PrefSettings annotation, thanks! BTW I'm referring to the class: " + objClass.getName());
         }
 
         // Reformat into a path and return.
         return "/" + pkg.replaceAll("\\.", "/");
     }
 
+    private static boolean hasClass(String className) {
+        try {
+            Class.forName(className, false, Prefs.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
     /**
      * Lazy loaded compact {@link Gson} client for working with collections and stuff.
      */
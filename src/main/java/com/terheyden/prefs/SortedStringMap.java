@@ -0,0 +1,164 @@
+package com.terheyden.prefs;
+
+import com.terheyden.prefs.util.SortedStringTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Read-only {@link Map} view of a pair of off-heap {@link SortedStringTable}s - one for keys,
+ * one for the values at the same index.
+ * Bound to {@code @Pref(offHeap = true)} Map fields by {@link Prefs#load(Object)}.
+ *
+ * The map itself can't be modified - use {@link #with(String, String)} and {@link #without(String...)}
+ * to get a new map, and assign that back to your field before saving.
+ */
+public final class SortedStringMap extends AbstractMap<String, String> {
+
+    public static final SortedStringMap EMPTY = new SortedStringMap(SortedStringTable.EMPTY, SortedStringTable.EMPTY);
+
+    private final SortedStringTable keys;
+    private final SortedStringTable vals;
+
+    private SortedStringMap(SortedStringTable keys, SortedStringTable vals) {
+        this.keys = keys;
+        this.vals = vals;
+    }
+
+    /**
+     * Null keys and values aren't supported.
+     */
+    public static SortedStringMap of(Map<String, String> map) {
+
+        if (map.isEmpty()) {
+            return EMPTY;
+        }
+
+        // Sort by UTF-8 bytes, same as the table does.
+        TreeMap<byte[], byte[]> sorted = new TreeMap<>(SortedStringTable::compareUtf8);
+        map.forEach((key, val) -> sorted.put(
+            key.getBytes(StandardCharsets.UTF_8),
+            val.getBytes(StandardCharsets.UTF_8)));
+
+        return new SortedStringMap(
+            SortedStringTable.fromBytes(new ArrayList<>(sorted.keySet())),
+            SortedStringTable.fromBytes(new ArrayList<>(sorted.values())));
+    }
+
+    @Override
+    public String get(Object key) {
+
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        int i = keys.indexOf((String) key);
+        return i < 0 ? null : vals.get(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && keys.indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.size();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        int i = next++;
+                        return new SimpleImmutableEntry<>(keys.get(i), vals.get(i));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    /**
+     * @return a new map containing this map's entries plus the specified one
+     */
+    public SortedStringMap with(String key, String val) {
+        return withAll(Collections.singletonMap(key, val));
+    }
+
+    public SortedStringMap withAll(Map<String, String> map) {
+
+        Map<String, String> all = new HashMap<>(this);
+        all.putAll(map);
+
+        return of(all);
+    }
+
+    /**
+     * @return a new map containing this map's entries, minus the specified keys - or this map, if it has none of them
+     */
+    public SortedStringMap without(String... keysToRemove) {
+
+        // Look each one up, rather than decoding every key to check against them.
+        boolean[] removed = new boolean[size()];
+        boolean anyRemoved = false;
+
+        for (String key : keysToRemove) {
+            int i = keys.indexOf(key);
+            if (i >= 0) {
+                removed[i] = true;
+                anyRemoved = true;
+            }
+        }
+
+        if (!anyRemoved) {
+            return this;
+        }
+
+        List<byte[]> newKeys = new ArrayList<>(size());
+        List<byte[]> newVals = new ArrayList<>(size());
+
+        for (int i = 0; i < keys.size(); i++) {
+            if (!removed[i]) {
+                newKeys.add(keys.getBytes(i));
+                newVals.add(vals.getBytes(i));
+            }
+        }
+
+        return newKeys.isEmpty()
+            ? EMPTY
+            : new SortedStringMap(SortedStringTable.fromBytes(newKeys), SortedStringTable.fromBytes(newVals));
+    }
+}
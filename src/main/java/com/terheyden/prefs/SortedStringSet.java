@@ -0,0 +1,121 @@
+package com.terheyden.prefs;
+
+import com.terheyden.prefs.util.SortedStringTable;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only {@link java.util.Set} view of an off-heap {@link SortedStringTable}.
+ * Bound to {@code @Pref(offHeap = true)} Set fields by {@link Prefs#load(Object)}.
+ *
+ * The set itself can't be modified - use {@link #plus(String...)} and {@link #minus(String...)}
+ * to get a new set, and assign that back to your field before saving.
+ */
+public final class SortedStringSet extends AbstractSet<String> {
+
+    public static final SortedStringSet EMPTY = new SortedStringSet(SortedStringTable.EMPTY);
+
+    private final SortedStringTable table;
+
+    private SortedStringSet(SortedStringTable table) {
+        this.table = table;
+    }
+
+    public static SortedStringSet of(Collection<String> strs) {
+        return strs.isEmpty() ? EMPTY : new SortedStringSet(SortedStringTable.of(strs));
+    }
+
+    public static SortedStringSet of(String... strs) {
+        return of(Arrays.asList(strs));
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return obj instanceof String && table.indexOf((String) obj) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < table.size();
+            }
+
+            @Override
+            public String next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return table.get(next++);
+            }
+        };
+    }
+
+    /**
+     * @return a new set containing this set's entries plus the specified ones
+     */
+    public SortedStringSet plus(String... strs) {
+        return plusAll(Arrays.asList(strs));
+    }
+
+    public SortedStringSet plusAll(Collection<String> strs) {
+
+        List<String> all = new ArrayList<>(size() + strs.size());
+        all.addAll(this);
+        all.addAll(strs);
+
+        return of(all);
+    }
+
+    /**
+     * @return a new set containing this set's entries, minus the specified ones - or this set, if it has none of them
+     */
+    public SortedStringSet minus(String... strs) {
+        return minusAll(Arrays.asList(strs));
+    }
+
+    public SortedStringSet minusAll(Collection<String> strs) {
+
+        // Look each one up, rather than decoding every entry to check against them.
+        boolean[] removed = new boolean[size()];
+        boolean anyRemoved = false;
+
+        for (String str : strs) {
+            int i = table.indexOf(str);
+            if (i >= 0) {
+                removed[i] = true;
+                anyRemoved = true;
+            }
+        }
+
+        if (!anyRemoved) {
+            return this;
+        }
+
+        List<byte[]> remaining = new ArrayList<>(size());
+        for (int i = 0; i < table.size(); i++) {
+            if (!removed[i]) {
+                remaining.add(table.getBytes(i));
+            }
+        }
+
+        return remaining.isEmpty() ? EMPTY : new SortedStringSet(SortedStringTable.fromBytes(remaining));
+    }
+}
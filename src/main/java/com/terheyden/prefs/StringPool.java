@@ -0,0 +1,145 @@
+package com.terheyden.prefs;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, weakly-referenced String interning pool, used by {@link Prefs#load(Object)}
+ * to share identical Strings across everything it decodes.
+ * Turn it on with {@link Prefs#setStringPool(StringPool)}.
+ *
+ * Map keys and Set elements are always pooled, since they repeat the most.
+ * List elements and map values are pooled only if you ask for it, see {@link #StringPool(int, boolean)}.
+ *
+ * The pool is a fixed-size table of weak references - a newer String simply replaces an older
+ * one that lands in the same slot, and pooled Strings are still garbage collected normally.
+ * So it never grows, never blocks, and never keeps anything alive.
+ */
+public class StringPool {
+
+    // Rough per-String overhead: object header, fields, and the backing array header. Varies by JVM.
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final AtomicReferenceArray<WeakReference<String>> slots;
+    private final int mask;
+    private final boolean poolValues;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * @param maxEntries how many Strings to remember, rounded up to a power of 2
+     * @param poolValues also pool List elements and map values, not just keys
+     */
+    public StringPool(int maxEntries, boolean poolValues) {
+
+        if (maxEntries < 1 || maxEntries > 1 << 30) {
+            throw new IllegalArgumentException("maxEntries must be between 1 and 2^30: " + maxEntries);
+        }
+
+        int size = Integer.highestOneBit(maxEntries);
+        if (size < maxEntries) {
+            size <<= 1;
+        }
+
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        this.poolValues = poolValues;
+    }
+
+    /**
+     * Pool keys only, with room for 4096 Strings.
+     */
+    public StringPool() {
+        this(4096, false);
+    }
+
+    /**
+     * @return the pooled copy of the String if we have one, otherwise the String itself (which is now pooled)
+     */
+    public String intern(String str) {
+
+        if (str == null) {
+            return null;
+        }
+
+        // Spread the hash bits, like HashMap does.
+        int hash = str.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        WeakReference<String> ref = slots.get(slot);
+        String pooled = ref == null ? null : ref.get();
+
+        if (pooled != null && pooled.equals(str)) {
+            hits.increment();
+            bytesSaved.add(STRING_OVERHEAD_BYTES + estimateCharBytes(str));
+            return pooled;
+        }
+
+        misses.increment();
+        slots.set(slot, new WeakReference<>(str));
+        return str;
+    }
+
+    /**
+     * Compact Strings (JDK 9+) store Latin-1 text in 1 byte per char, and anything else in 2.
+     * There's no public way to ask which a String uses, so check the chars, the way the JDK decides.
+     */
+    private static long estimateCharBytes(String str) {
+
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > 0xFF) {
+                return 2L * str.length();
+            }
+        }
+
+        return str.length();
+    }
+
+    /**
+     * Pool keys always, and values only if we were configured to.
+     */
+    String intern(String str, boolean isKey) {
+        return isKey || poolValues ? intern(str) : str;
+    }
+
+    public boolean isPoolingValues() {
+        return poolValues;
+    }
+
+    /**
+     * How many decoded Strings were replaced by a pooled copy.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * How many decoded Strings weren't in the pool.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * An estimate of the heap saved by sharing pooled Strings: a rough per-String overhead, plus
+     * 1 byte per char for Latin-1 text and 2 for anything else (compact Strings, JDK 9+).
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        bytesSaved.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StringPool[size=%d, hits=%d, misses=%d, bytesSaved=%d]",
+            slots.length(), getHits(), getMisses(), getBytesSaved());
+    }
+}
@@ -4,32 +4,79 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.function.Supplier;
 
+/**
+ * Null / empty / blank checks.
+ *
+ * The static checks are stateless and don't allocate, so they're safe to call from hot paths
+ * and from any number of (virtual) threads. The fluent validators, e.g. {@code With.str(s).ifBlank("x")},
+ * are thin immutable wrappers over them - small enough that the JIT normally scalar-replaces them.
+ */
 public enum With {
     ;
 
-    private static final ThreadLocal<StringValidator> stringValid = ThreadLocal.withInitial(StringValidator::new);
-    private static final ThreadLocal<CollectionValidator> collValid = ThreadLocal.withInitial(CollectionValidator::new);
-    private static final ThreadLocal<MapValidator> mapValid = ThreadLocal.withInitial(MapValidator::new);
-
     public static StringValidator str(String str) {
-        return stringValid.get().setStr(str);
+        return new StringValidator(str);
     }
 
     public static CollectionValidator coll(Collection coll) {
-        return collValid.get().setColl(coll);
+        return new CollectionValidator(coll);
     }
 
     public static MapValidator map(Map map) {
-        return mapValid.get().setMap(map);
+        return new MapValidator(map);
+    }
+
+    public static boolean isEmpty(String str) {
+        return str == null || str.isEmpty();
+    }
+
+    /**
+     * A String is blank if it is null, empty, or consists of only whitespace.
+     * Whitespace means the same as {@link String#trim()} - any char up to and including ' ' -
+     * but nothing is trimmed or copied to find out.
+     * @return true if the string is blank
+     */
+    public static boolean isBlank(String str) {
+
+        if (str == null) {
+            return true;
+        }
+
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > ' ') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public static boolean isNotBlank(String str) {
+        return !isBlank(str);
+    }
+
+    public static String ifBlank(String str, String useIfBlank) {
+        return isBlank(str) ? useIfBlank : str;
+    }
+
+    public static String ifBlank(String str, Supplier<String> useIfBlank) {
+        return isBlank(str) ? useIfBlank.get() : str;
+    }
+
+    public static boolean isEmpty(Collection<?> coll) {
+        return coll == null || coll.isEmpty();
+    }
+
+    public static boolean isEmpty(Map<?, ?> map) {
+        return map == null || map.isEmpty();
     }
 
     public static class StringValidator {
 
-        private String str;
+        private final String str;
 
-        private StringValidator setStr(String str) {
+        private StringValidator(String str) {
             this.str = str;
-            return this;
         }
 
         public boolean isNull() {
@@ -54,7 +101,7 @@ public enum With {
         }
 
         public boolean isEmpty() {
-            return str == null || str.isEmpty();
+            return With.isEmpty(str);
         }
 
         public boolean isNotEmpty() {
@@ -85,7 +132,7 @@ public enum With {
          * @return true if the string is blank
          */
         public boolean isBlank() {
-            return isEmpty() || str.trim().isEmpty();
+            return With.isBlank(str);
         }
 
         /**
@@ -94,7 +141,7 @@ public enum With {
          * @return true if the string is not null, and has content other than whitespace
          */
         public boolean isNotBlank() {
-            return str != null && !str.trim().isEmpty();
+            return !With.isBlank(str);
         }
 
         /**
@@ -102,12 +149,7 @@ public enum With {
          * See also: {@link String#trim()}.
          */
         public String ifBlank(String useIfBlank) {
-
-            if (isBlank()) {
-                return useIfBlank;
-            }
-
-            return str;
+            return With.ifBlank(str, useIfBlank);
         }
 
         /**
@@ -116,12 +158,7 @@ public enum With {
          * @return true if the string is blank
          */
         public String ifBlank(Supplier<String> useIfBlank) {
-
-            if (isBlank()) {
-                return useIfBlank.get();
-            }
-
-            return str;
+            return With.ifBlank(str, useIfBlank);
         }
 
         /**
@@ -142,20 +179,19 @@ public enum With {
             }
 
             // Try trimming...
-            str = str.trim();
+            String trimmed = str.trim();
 
-            return str.isEmpty() ? null : str;
+            return trimmed.isEmpty() ? null : trimmed;
         }
 
     } // end StringValidator class.
 
     public static class CollectionValidator {
 
-        private Collection<?> coll;
+        private final Collection<?> coll;
 
-        private CollectionValidator setColl(Collection<?> coll) {
+        private CollectionValidator(Collection<?> coll) {
             this.coll = coll;
-            return this;
         }
 
         public boolean isNull() {
@@ -180,7 +216,7 @@ public enum With {
         }
 
         public boolean isEmpty() {
-            return coll == null || coll.isEmpty();
+            return With.isEmpty(coll);
         }
 
         public boolean isNotEmpty() {
@@ -209,11 +245,10 @@ public enum With {
 
     public static class MapValidator {
 
-        private Map<?, ?> map;
+        private final Map<?, ?> map;
 
-        private MapValidator setMap(Map<?, ?> map) {
+        private MapValidator(Map<?, ?> map) {
             this.map = map;
-            return this;
         }
 
         public boolean isNull() {
@@ -225,7 +260,7 @@ public enum With {
         }
 
         public boolean isEmpty() {
-            return map == null || map.isEmpty();
+            return With.isEmpty(map);
         }
 
         public boolean isNotEmpty() {
@@ -0,0 +1,30 @@
+package com.terheyden.prefs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Prefs encoding a collection to JSON, or decoding one.
+ */
+@Name("com.terheyden.prefs.Codec")
+@Label("Prefs JSON Codec")
+@Category("Prefs")
+public final class PrefsCodecEvent extends Event {
+
+    @Label("Encode")
+    @Description("True when encoding a value to JSON, false when decoding one")
+    public boolean encode;
+
+    @Label("Value Type")
+    @Description("Type of the collection encoded or decoded")
+    public Class<?> valueType;
+
+    @Label("Encoded Bytes")
+    @Description("Size of the JSON, in UTF-8 bytes")
+    @DataAmount(DataAmount.BYTES)
+    public long encodedBytes;
+}
@@ -0,0 +1,18 @@
+package com.terheyden.prefs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call to Prefs.flushAllPrefs().
+ */
+@Name("com.terheyden.prefs.Flush")
+@Label("Prefs Flush")
+@Category("Prefs")
+public final class PrefsFlushEvent extends Event {
+
+    @Label("Node Count")
+    public int nodeCount;
+}
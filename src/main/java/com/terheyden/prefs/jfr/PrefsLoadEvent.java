@@ -0,0 +1,12 @@
+package com.terheyden.prefs.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call to Prefs.load().
+ */
+@Name("com.terheyden.prefs.Load")
+@Label("Prefs Load")
+public final class PrefsLoadEvent extends PrefsOpEvent {
+}
@@ -0,0 +1,21 @@
+package com.terheyden.prefs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Prefs looking up (and possibly creating) a Preferences node for the first time.
+ */
+@Name("com.terheyden.prefs.Node")
+@Label("Prefs Node Lookup")
+@Category("Prefs")
+public final class PrefsNodeEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Global")
+    public boolean global;
+}
@@ -0,0 +1,30 @@
+package com.terheyden.prefs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Common fields for {@link PrefsSaveEvent} and {@link PrefsLoadEvent}.
+ */
+@Category("Prefs")
+public abstract class PrefsOpEvent extends Event {
+
+    @Label("Path")
+    @Description("Preferences path of the settings object")
+    public String path;
+
+    @Label("Settings Class")
+    public Class<?> settingsClass;
+
+    @Label("Field Count")
+    @Description("Number of @Pref fields walked")
+    public int fieldCount;
+
+    @Label("Encoded Bytes")
+    @Description("Total length of the stored values read or written (chars, which is bytes for ASCII / JSON)")
+    @DataAmount
+    public long encodedBytes;
+}
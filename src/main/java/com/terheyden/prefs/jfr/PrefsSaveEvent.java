@@ -0,0 +1,12 @@
+package com.terheyden.prefs.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call to Prefs.save().
+ */
+@Name("com.terheyden.prefs.Save")
+@Label("Prefs Save")
+public final class PrefsSaveEvent extends PrefsOpEvent {
+}
@@ -14,8 +14,15 @@ public enum AnnotationFinder {
      * @return specified annotations on the specified class obj, if any
      */
     public static List<Annotation> findAnnotatedClass(Object obj, Class<?> annotationToFind) {
+        return findAnnotatedClass(obj.getClass(), annotationToFind);
+    }
+
+    /**
+     * Does not return null.
+     * @return specified annotations on the specified class, if any
+     */
+    public static List<Annotation> findAnnotatedClass(Class<?> objClass, Class<?> annotationToFind) {
 
-        Class<?> objClass = obj.getClass();
         List<Annotation> annotList = new LinkedList<>();
 
         // Note - don't use declared annotations.
@@ -52,18 +59,20 @@ public enum AnnotationFinder {
 
     /**
      * Does not return null.
+     * Includes fields inherited from superclasses.
      * @return fields with the specified annotation attached, never null
      */
     public static List<AnnotationResult<Field>> findAnnotatedFields(Object obj, Class<?> annotationToFind) {
 
-        Class<?> objClass = obj.getClass();
         List<AnnotationResult<Field>> fieldList = new LinkedList<>();
 
-        for (Field field : objClass.getDeclaredFields()) {
-            for (Annotation ann : field.getDeclaredAnnotations()) {
+        for (Class<?> objClass = obj.getClass(); objClass != null && objClass != Object.class; objClass = objClass.getSuperclass()) {
+            for (Field field : objClass.getDeclaredFields()) {
+                for (Annotation ann : field.getDeclaredAnnotations()) {
 
-                if (ann.annotationType().equals(annotationToFind)) {
-                    fieldList.add(new AnnotationResult<>(obj, field, ann));
+                    if (ann.annotationType().equals(annotationToFind)) {
+                        fieldList.add(new AnnotationResult<>(obj, field, ann));
+                    }
                 }
             }
         }
@@ -71,6 +80,61 @@ public enum AnnotationFinder {
         return fieldList;
     }
 
+    /**
+     * Does not return null.
+     * Like {@link #findAnnotatedFields(Object, Class)}, for when there's no instance - the results' obj is null.
+     * @return fields with the specified annotation attached, including inherited ones, never null
+     */
+    public static List<AnnotationResult<Field>> findAnnotatedClassFields(Class<?> objClass, Class<?> annotationToFind) {
+
+        List<AnnotationResult<Field>> fieldList = new LinkedList<>();
+
+        for (; objClass != null && objClass != Object.class; objClass = objClass.getSuperclass()) {
+            for (Field field : objClass.getDeclaredFields()) {
+                for (Annotation ann : field.getDeclaredAnnotations()) {
+
+                    if (ann.annotationType().equals(annotationToFind)) {
+                        fieldList.add(new AnnotationResult<>(null, field, ann));
+                    }
+                }
+            }
+        }
+
+        return fieldList;
+    }
+
+    /**
+     * @return true if the class, or any superclass, has a field with the specified annotation attached
+     */
+    public static boolean hasAnnotatedFields(Class<?> objClass, Class<? extends Annotation> annotationToFind) {
+
+        for (; objClass != null && objClass != Object.class; objClass = objClass.getSuperclass()) {
+            for (Field field : objClass.getDeclaredFields()) {
+                if (field.isAnnotationPresent(annotationToFind)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Like {@link Class#getDeclaredField(String)}, but also searches superclasses.
+     */
+    public static Field findField(Class<?> objClass, String fieldName) throws NoSuchFieldException {
+
+        for (Class<?> cls = objClass; cls != null; cls = cls.getSuperclass()) {
+            try {
+                return cls.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                // Try the superclass.
+            }
+        }
+
+        throw new NoSuchFieldException(fieldName);
+    }
+
     public static class AnnotationResult<T> {
         public final Object obj;
         public final T element;
@@ -0,0 +1,198 @@
+package com.terheyden.prefs.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable, sorted table of Strings stored off-heap, in a direct {@link ByteBuffer}.
+ * Lookups are a binary search over the UTF-8 bytes, so they're O(log n) and
+ * the only thing on the heap is this small wrapper.
+ *
+ * Layout: [count][offset 0]..[offset count][utf-8 bytes..]
+ * Entry i lives at bytes [offset i, offset i+1).
+ *
+ * Entries are ordered by their unsigned UTF-8 bytes, which is Unicode code point order.
+ */
+public final class SortedStringTable {
+
+    public static final SortedStringTable EMPTY = new SortedStringTable(new ArrayList<>());
+
+    private final ByteBuffer buf;
+    private final int count;
+    private final int dataStart;
+
+    private SortedStringTable(List<byte[]> sortedEntries) {
+
+        int dataLen = 0;
+        for (byte[] entry : sortedEntries) {
+            dataLen += entry.length;
+        }
+
+        count = sortedEntries.size();
+        dataStart = 4 * (count + 2);
+        buf = ByteBuffer.allocateDirect(dataStart + dataLen);
+
+        buf.putInt(0, count);
+
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] entry = sortedEntries.get(i);
+            buf.putInt(4 * (i + 1), offset);
+            at(offset).put(entry);
+            offset += entry.length;
+        }
+
+        buf.putInt(4 * (count + 1), offset);
+    }
+
+    /**
+     * Build a table from the specified Strings. Duplicates are dropped.
+     * Doesn't accept null entries.
+     */
+    public static SortedStringTable of(Collection<String> strs) {
+        return fromBytes(sortedUnique(strs));
+    }
+
+    /**
+     * Build a table from UTF-8 entries, stored in the order given.
+     * {@link #indexOf(String)} only works if they're sorted by {@link #compareUtf8(byte[], byte[])}
+     * with no duplicates - map values are stored unsorted, and only read by index.
+     */
+    public static SortedStringTable fromBytes(List<byte[]> sortedEntries) {
+        return sortedEntries.isEmpty() ? EMPTY : new SortedStringTable(sortedEntries);
+    }
+
+    /**
+     * Encode and sort the Strings, dropping duplicates.
+     */
+    public static List<byte[]> sortedUnique(Collection<String> strs) {
+
+        List<byte[]> entries = new ArrayList<>(strs.size());
+        for (String str : strs) {
+            entries.add(str.getBytes(StandardCharsets.UTF_8));
+        }
+
+        entries.sort(SortedStringTable::compareUtf8);
+
+        // Drop dupes in place.
+        int last = 0;
+        for (int i = 1; i < entries.size(); i++) {
+            if (compareUtf8(entries.get(last), entries.get(i)) != 0) {
+                entries.set(++last, entries.get(i));
+            }
+        }
+
+        return entries.isEmpty() ? entries : new ArrayList<>(entries.subList(0, last + 1));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Decodes entry i into a new String.
+     */
+    public String get(int i) {
+
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", size: " + count);
+        }
+
+        return new String(getBytes(i), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Binary search for the String.
+     * @return the entry's index, or (-(insertion point) - 1) if not found, like {@link java.util.Arrays#binarySearch}
+     */
+    public int indexOf(String str) {
+        return str == null ? -1 : indexOf(str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int indexOf(byte[] utf8) {
+
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+
+            int mid = (low + high) >>> 1;
+            int cmp = compareEntry(mid, utf8);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Raw UTF-8 bytes of entry i, for rebuilding tables without decoding.
+     */
+    public byte[] getBytes(int i) {
+
+        int start = start(i);
+        byte[] bytes = new byte[start(i + 1) - start];
+        at(start).get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A view of the buffer positioned at this data offset, for bulk gets and puts.
+     * (Absolute bulk methods need Java 13.)
+     */
+    private ByteBuffer at(int offset) {
+
+        ByteBuffer view = buf.duplicate();
+        view.position(dataStart + offset);
+        return view;
+    }
+
+    private int start(int i) {
+        return buf.getInt(4 * (i + 1));
+    }
+
+    /**
+     * Compare entry i against the key, without decoding the entry.
+     */
+    private int compareEntry(int i, byte[] key) {
+
+        int start = dataStart + start(i);
+        int len = start(i + 1) - start(i);
+        int min = Math.min(len, key.length);
+
+        for (int b = 0; b < min; b++) {
+            int cmp = (buf.get(start + b) & 0xff) - (key[b] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return len - key.length;
+    }
+
+    /**
+     * Unsigned lexicographic comparison of UTF-8 bytes (i.e. code point order).
+     */
+    public static int compareUtf8(byte[] a, byte[] b) {
+
+        int min = Math.min(a.length, b.length);
+
+        for (int i = 0; i < min; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,88 @@
+package com.terheyden.prefs.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A small, synchronized map with weakly-held keys compared by identity (==), not equals().
+ * Used to hang state off of objects we don't own without keeping them alive,
+ * and without caring how (or whether) they implement equals / hashCode.
+ */
+public class WeakIdentityHashMap<K, V> {
+
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+    private final Map<IdentityWeakReference<K>, V> map = new HashMap<>();
+
+    public synchronized V get(K key) {
+        expunge();
+        return map.get(new IdentityWeakReference<>(key, null));
+    }
+
+    public synchronized V put(K key, V val) {
+        expunge();
+        return map.put(new IdentityWeakReference<>(key, queue), val);
+    }
+
+    public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> makeVal) {
+
+        V val = get(key);
+        if (val == null) {
+            val = makeVal.apply(key);
+            put(key, val);
+        }
+
+        return val;
+    }
+
+    public synchronized V remove(K key) {
+        expunge();
+        return map.remove(new IdentityWeakReference<>(key, null));
+    }
+
+    public synchronized int size() {
+        expunge();
+        return map.size();
+    }
+
+    /**
+     * Drop entries whose keys have been garbage collected.
+     */
+    private void expunge() {
+        for (Object ref; (ref = queue.poll()) != null; ) {
+            map.remove(ref);
+        }
+    }
+
+    private static class IdentityWeakReference<T> extends WeakReference<T> {
+
+        private final int hash;
+
+        IdentityWeakReference(T referent, ReferenceQueue<T> queue) {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+
+            if (this == other) {
+                return true;
+            }
+
+            if (!(other instanceof IdentityWeakReference)) {
+                return false;
+            }
+
+            Object referent = get();
+            return referent != null && referent == ((IdentityWeakReference<?>) other).get();
+        }
+    }
+}
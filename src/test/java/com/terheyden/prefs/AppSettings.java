@@ -32,7 +32,8 @@ public class AppSettings {
     // Use an explicit type, e.g. LinkedList or ArrayList, for best results.
     // Private fields are also supported.
 
-    @Pref
+    // Reloads refill this same set, rather than replacing it.
+    @Pref(inPlace = true)
     private Set<String> cache = new HashSet<>();
 
     public Set<String> getCache() {
@@ -1,9 +1,27 @@
 package com.terheyden.prefs;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.prefs.Preferences;
 
 import static org.junit.Assert.*;
 
@@ -72,4 +90,801 @@ public class PrefsTest {
         Prefs.dump();
         Prefs.deleteAllPrefs();
     }
+
+    @Test
+    public void testOffHeap() {
+
+        SettingsLarge settings = new SettingsLarge();
+        settings.load();
+
+        settings.tags = SortedStringSet.of("zeta", "alpha", "\u00e9clair", "alpha");
+        settings.routes = SortedStringMap.EMPTY.with("/b", "svc-b").with("/a", "svc-a");
+        settings.save();
+        Prefs.dump();
+
+        SettingsLarge set2 = new SettingsLarge();
+        set2.load();
+
+        assertTrue(set2.tags instanceof SortedStringSet);
+        assertEquals(3, set2.tags.size());
+        assertTrue(set2.tags.contains("\u00e9clair"));
+        assertFalse(set2.tags.contains("beta"));
+        assertEquals("svc-a", set2.routes.get("/a"));
+        assertNull(set2.routes.get("/c"));
+
+        // Writes produce a new table:
+        SortedStringSet tags = ((SortedStringSet) set2.tags).plus("beta").minus("zeta");
+        assertEquals(3, tags.size());
+        assertTrue(tags.contains("beta"));
+        assertFalse(tags.contains("zeta"));
+        assertTrue(set2.tags.contains("zeta"));
+
+        SortedStringMap routes = ((SortedStringMap) set2.routes).without("/a");
+        assertEquals(1, routes.size());
+        assertEquals("svc-b", routes.get("/b"));
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testDeltaLog() throws Exception {
+
+        SettingsLarge settings = new SettingsLarge();
+        settings.load();
+        Prefs.deleteAllPrefs();
+
+        settings = new SettingsLarge();
+        for (int i = 0; i < 100; i++) {
+            settings.members.add("member" + i);
+        }
+        settings.owners.put("a", "alice");
+        settings.save();
+
+        Preferences log = Preferences.userRoot().node("/com/terheyden/prefs/large/members.log");
+        assertEquals(1, log.keys().length);
+
+        // Small changes only append to the log:
+        settings.members.add("member100");
+        settings.members.remove("member0");
+        settings.owners.put("b", "bob");
+        settings.owners.remove("a");
+        settings.save();
+        assertEquals(3, log.keys().length);
+
+        SettingsLarge set2 = new SettingsLarge();
+        set2.load();
+        assertEquals(100, set2.members.size());
+        assertTrue(set2.members.contains("member100"));
+        assertFalse(set2.members.contains("member0"));
+        assertEquals(1, set2.owners.size());
+        assertEquals("bob", set2.owners.get("b"));
+
+        // Big changes compact the log:
+        for (int i = 0; i < 100; i++) {
+            set2.members.add("new" + i);
+        }
+        set2.save();
+        assertEquals(1, log.keys().length);
+
+        SettingsLarge set3 = new SettingsLarge();
+        set3.load();
+        assertEquals(200, set3.members.size());
+
+        // Two objects appending at once don't overwrite each other's entries:
+        SettingsLarge set4 = new SettingsLarge();
+        set4.load();
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                set4.members.add("other" + i);
+                set4.save();
+            }
+        });
+
+        other.start();
+        for (int i = 0; i < 10; i++) {
+            set3.members.add("this" + i);
+            set3.save();
+        }
+        other.join();
+
+        SettingsLarge set5 = new SettingsLarge();
+        set5.load();
+        assertEquals(220, set5.members.size());
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testStringPool() {
+
+        SettingsCustomPath settings = new SettingsCustomPath();
+        settings.load();
+        settings.alist.clear();
+        settings.alist.add("feature-a");
+        settings.alist.add("feature-b");
+        settings.alist.add(null);
+        settings.save();
+
+        StringPool pool = new StringPool(64, true);
+        Prefs.setStringPool(pool);
+
+        try {
+
+            SettingsCustomPath set1 = new SettingsCustomPath();
+            set1.load();
+            SettingsCustomPath set2 = new SettingsCustomPath();
+            set2.load();
+
+            // Nulls are kept, as without a pool:
+            assertEquals(settings.alist, set2.alist);
+            assertSame(set1.alist.get(0), set2.alist.get(0));
+            assertSame(set1.alist.get(1), set2.alist.get(1));
+            assertTrue(pool.getHits() >= 2);
+
+            // Latin-1 Strings are counted at 1 byte per char, plus the overhead:
+            assertEquals(pool.getHits() * (40 + "feature-a".length()), pool.getBytesSaved());
+
+        } finally {
+            Prefs.setStringPool(null);
+            Prefs.deleteAllPrefs();
+        }
+    }
+
+    @Test
+    public void testVersionMigration() throws Exception {
+
+        // Data as a version 1 app stored it:
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/versioned");
+        node.clear();
+        node.putInt("_prefsVersion", 1);
+        node.put("lastDirUsed", "/tmp");
+        node.put("tags", "red,green");
+
+        SettingsVersioned settings = new SettingsVersioned();
+        settings.load();
+
+        assertEquals("/tmp", settings.lastDir);
+        assertEquals(Arrays.asList("red", "green"), settings.tags);
+
+        // Nothing is rewritten until we save:
+        assertEquals("red,green", node.get("tags", null));
+        settings.save();
+
+        assertEquals(2, node.getInt("_prefsVersion", 0));
+        assertNull(node.get("lastDirUsed", null));
+        assertEquals("/tmp", node.get("lastDir", null));
+
+        // Current nodes aren't migrated again:
+        SettingsVersioned set2 = new SettingsVersioned();
+        set2.load();
+        assertEquals(settings.tags, set2.tags);
+
+        // PrefKeys read old nodes the same way, and migrate the whole node before writing:
+        node.clear();
+        node.putInt("_prefsVersion", 1);
+        node.put("lastDirUsed", "/tmp");
+        node.put("tags", "red,green");
+
+        PrefKey<ArrayList<String>> tags = PrefKey.of(SettingsVersioned.class, "tags");
+        PrefKey<String> lastDir = PrefKey.of(SettingsVersioned.class, "lastDir");
+        assertEquals(Arrays.asList("red", "green"), tags.get());
+        assertEquals("/tmp", lastDir.get());
+
+        tags.set(new ArrayList<>(Arrays.asList("a", "b")));
+        assertEquals(2, node.getInt("_prefsVersion", 0));
+        assertEquals("/tmp", node.get("lastDir", null));
+        assertNull(node.get("lastDirUsed", null));
+
+        SettingsVersioned set3 = new SettingsVersioned();
+        set3.load();
+        assertEquals(Arrays.asList("a", "b"), set3.tags);
+        assertEquals("/tmp", set3.lastDir);
+
+        node.clear();
+
+        // Renames don't need a version - the old name is read until the next save moves it:
+        Preferences renamedNode = Preferences.userRoot().node("/com/terheyden/prefs/renamed");
+        renamedNode.clear();
+        renamedNode.put("login", "cory");
+
+        SettingsRenamed renamed = new SettingsRenamed();
+        Prefs.load(renamed);
+        assertEquals("cory", renamed.userName);
+
+        Prefs.save(renamed);
+        assertEquals("cory", renamedNode.get("userName", null));
+        assertNull(renamedNode.get("login", null));
+
+        renamedNode.clear();
+    }
+
+    @Test
+    public void testPrefKey() {
+
+        PrefKey<Integer> timesRan = PrefKey.of(AppSettings.class, "timesRan");
+        PrefKey<String> license = PrefKey.of(AppSettings.class, "sysLicense");
+        PrefKey<Set<String>> cache = PrefKey.of(AppSettings.class, "cache");
+
+        timesRan.set(null);
+        license.set(null);
+        assertEquals(0, (int) timesRan.get());
+        assertEquals("UNLICENSED", license.get());
+        assertEquals("license", license.getKey());
+
+        timesRan.set(5);
+        assertFalse(timesRan.compareAndSet(4, 6));
+        assertTrue(timesRan.compareAndSet(5, 6));
+        assertEquals(7, (int) timesRan.update(n -> n + 1));
+
+        cache.set(new HashSet<>(Arrays.asList("a", "b")));
+
+        // Same values as a full load:
+        AppSettings settings = new AppSettings();
+        settings.load();
+        assertEquals(7, settings.timesRan);
+        assertEquals(cache.get(), settings.getCache());
+
+        try {
+            PrefKey.of(AppSettings.class, "users");
+            fail("users isn't a @Pref field");
+        } catch (IllegalArgumentException expected) {
+            // Good.
+        }
+
+        try {
+            PrefKey.of(SettingsLarge.class, "recent");
+            fail("Bounded fields can't be PrefKeys");
+        } catch (IllegalArgumentException expected) {
+            // Good.
+        }
+
+        // Writes take the same path as saves, so multiProcess saves see them as another writer's:
+        Preferences shared = Preferences.userRoot().node("/com/terheyden/prefs/shared");
+        PrefKey<String> region = PrefKey.of(SettingsShared.class, "region");
+        region.set("us");
+        SettingsShared bound = new SettingsShared();
+        Prefs.load(bound);
+
+        long stamp = shared.getLong("_prefsStamp", 0);
+        region.set("eu");
+        assertTrue(shared.getLong("_prefsStamp", 0) > stamp);
+
+        stamp = shared.getLong("_prefsStamp", 0);
+        region.set("eu");
+        assertEquals("Unchanged values aren't rewritten", stamp, shared.getLong("_prefsStamp", 0));
+
+        bound.hosts = Collections.singletonList("host1");
+        Prefs.save(bound);
+        assertEquals("eu", region.get());
+
+        // Each caller gets their own default collection:
+        PrefKey<ArrayList<String>> defaults = PrefKey.of(SettingsDefaults.class, "names");
+        defaults.get().add("x");
+        assertTrue(defaults.get().isEmpty());
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+
+        SettingsLarge settings = new SettingsLarge();
+        settings.load();
+        Prefs.deleteAllPrefs();
+
+        settings = new SettingsLarge();
+        settings.recent.addAll(Arrays.asList("r1", "r2", "r3", "r4", "r5"));
+        settings.lru.put("a", "1");
+        settings.lru.put("b", "2");
+        settings.expiring.addAll(Arrays.asList("old", "new"));
+        settings.save();
+
+        // Trimmed on save, and the field is now bounded:
+        assertTrue(settings.recent instanceof BoundedSet);
+        assertEquals(new HashSet<>(Arrays.asList("r3", "r4", "r5")), settings.recent);
+        settings.recent.add("r6");
+        assertEquals(3, settings.recent.size());
+        assertFalse(settings.recent.contains("r3"));
+
+        // Make "old" look expired:
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/large");
+        node.put("expiring.ttl", "{\"old\":1,\"new\":" + System.currentTimeMillis() + "}");
+
+        SettingsLarge set2 = new SettingsLarge();
+        set2.load();
+
+        assertEquals(Collections.singleton("new"), set2.expiring);
+
+        // LRU - using "a" makes "b" the one to go:
+        assertEquals("1", set2.lru.get("a"));
+        set2.lru.put("c", "3");
+        assertEquals(2, set2.lru.size());
+        assertFalse(set2.lru.containsKey("b"));
+
+        // LRU without a limit would never evict, so it's rejected rather than ignored:
+        try {
+            PrefKey.of(SettingsUnboundedLru.class, "lru");
+            fail("LRU needs a maxEntries");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("LRU"));
+        }
+
+        try {
+            new BoundedMap<String, String>(0, Eviction.LRU, 0);
+            fail("LRU needs a maxEntries");
+        } catch (IllegalArgumentException expected) {
+            // Good.
+        }
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+
+        AppSettings settings = new AppSettings();
+        settings.load();
+        settings.lastDir = "/one";
+        settings.map = new HashMap<>();
+        settings.map.put("key1", "val1");
+        settings.save();
+
+        PrefSnapshot<AppSettings> snapshot = Prefs.snapshot(AppSettings.class);
+        assertSame(snapshot, Prefs.snapshot(AppSettings.class));
+
+        AppSettings before = snapshot.get();
+        assertEquals("/one", before.lastDir);
+        assertSame(before, snapshot.get());
+
+        try {
+            before.map.put("nope", "nope");
+            fail("Snapshot maps are read-only");
+        } catch (UnsupportedOperationException expected) {
+            // Good.
+        }
+
+        // Changes are picked up in the background:
+        settings.lastDir = "/two";
+        settings.save();
+
+        awaitSnapshot(() -> "/two".equals(snapshot.get().lastDir));
+        assertEquals("/one", before.lastDir);
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testSnapshotBounded() {
+
+        SettingsLarge settings = new SettingsLarge();
+        settings.lru.put("a", "1");
+        settings.lru.put("b", "2");
+        settings.save();
+
+        // LRU maps reorder on reads, so snapshots hold a plain copy.
+        // (Another test may have made this snapshot already, so make sure it has our save.)
+        PrefSnapshot<SettingsLarge> snapshot = Prefs.snapshot(SettingsLarge.class);
+        snapshot.refresh();
+        SettingsLarge frozen = snapshot.get();
+        assertFalse(frozen.lru instanceof BoundedMap);
+        assertEquals("1", frozen.lru.get("a"));
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(frozen.lru.keySet()));
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testLayered() throws Exception {
+
+        Preferences userNode = Preferences.userRoot().node("/com/terheyden/prefs");
+        Preferences sysNode = Preferences.systemRoot().node("/com/terheyden/prefs");
+        userNode.remove("lastDir");
+        userNode.remove("license");
+        sysNode.remove("license");
+        sysNode.put("lastDir", "/sys");
+
+        PrefSnapshot<AppSettings> layered = Prefs.layered(AppSettings.class);
+        assertEquals("/sys", layered.get().lastDir);
+        assertEquals("UNLICENSED", layered.get().sysLicense);
+
+        // User overrides global:
+        userNode.put("lastDir", "/user");
+        awaitSnapshot(() -> "/user".equals(layered.get().lastDir));
+
+        // ..and falls back again when removed:
+        userNode.remove("lastDir");
+        awaitSnapshot(() -> "/sys".equals(layered.get().lastDir));
+
+        userNode.put("license", "MIT");
+        awaitSnapshot(() -> "MIT".equals(layered.get().sysLicense));
+        assertEquals("/sys", layered.get().lastDir);
+
+        userNode.remove("license");
+        sysNode.remove("lastDir");
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception {
+
+        Path file = Files.createTempFile("prefs", ".jfr");
+
+        try (Recording recording = new Recording()) {
+
+            recording.enable("com.terheyden.prefs.Save");
+            recording.enable("com.terheyden.prefs.Codec");
+            recording.start();
+
+            AppSettings settings = new AppSettings();
+            settings.map = new HashMap<>();
+            settings.map.put("key1", "v\u00e4l1");
+            settings.save();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        RecordedEvent save = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.terheyden.prefs.Save"))
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+
+        assertEquals("/com/terheyden/prefs", save.getString("path"));
+        assertTrue(save.getInt("fieldCount") > 0);
+        assertTrue(save.getLong("encodedBytes") > 0);
+
+        // Codec sizes are UTF-8 bytes, not chars:
+        long mapBytes = "{\"key1\":\"v\u00e4l1\"}".getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(events.stream().anyMatch(event ->
+            event.getEventType().getName().equals("com.terheyden.prefs.Codec") && event.getBoolean("encode")
+                && event.getClass("valueType").getName().equals(HashMap.class.getName())
+                && event.getLong("encodedBytes") == mapBytes));
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testWith() {
+
+        assertTrue(With.isBlank(null));
+        assertTrue(With.isBlank(""));
+        assertTrue(With.isBlank(" \t\n"));
+        assertFalse(With.isBlank(" x "));
+        assertEquals("field", With.ifBlank("  ", "field"));
+        assertEquals(" name", With.str(" name").ifBlank("field"));
+        assertEquals("name", With.str(" name ").trimToNull());
+        assertNull(With.str("  ").trimToNull());
+        assertTrue(With.coll(null).isEmpty());
+        assertTrue(With.map(Collections.emptyMap()).isEmpty());
+    }
+
+    @Test
+    public void testPerEntry() throws Exception {
+
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/large");
+
+        // An old-style single JSON value is moved into the entry node on load:
+        node.put("routeTable", "{\"/a\":\"host1\"}");
+
+        SettingsLarge settings = new SettingsLarge();
+        settings.load();
+        assertTrue(settings.routeTable instanceof PrefMap);
+        assertEquals("host1", settings.routeTable.get("/a"));
+        assertNull(node.get("routeTable", null));
+
+        // Entry writes go straight to the store:
+        settings.routeTable.put("/b", "host2");
+        assertEquals("host2", node.node("routeTable.map").get("/b", null));
+        settings.routeTable.remove("/a");
+        SettingsLarge reloaded = new SettingsLarge();
+        reloaded.load();
+        assertEquals(Collections.singletonMap("/b", "host2"), new HashMap<>(reloaded.routeTable));
+
+        // Saving a plain map only keeps its entries, and binds the field:
+        settings.routeTable = new HashMap<>();
+        settings.routeTable.put("/c", "host3");
+        settings.save();
+        assertTrue(settings.routeTable instanceof PrefMap);
+        assertEquals(1, settings.routeTable.size());
+        assertEquals("host3", node.node("routeTable.map").get("/c", null));
+
+        // Bad entries are rejected before anything is written:
+        Map<String, String> tooLong = new HashMap<>();
+        tooLong.put("/d", "host4");
+        tooLong.put(String.join("", Collections.nCopies(Preferences.MAX_KEY_LENGTH + 1, "x")), "host5");
+        settings.routeTable = tooLong;
+        settings.save();
+        assertEquals("host3", node.node("routeTable.map").get("/c", null));
+        assertNull(node.node("routeTable.map").get("/d", null));
+
+        settings.routeTable = null;
+        settings.save();
+        assertFalse(node.nodeExists("routeTable.map"));
+
+        // Maps stored under an old name are moved, whether stored as one value or per entry:
+        node.put("routeTableV1", "{\"/e\":\"host6\"}");
+        settings.load();
+        assertEquals("host6", settings.routeTable.get("/e"));
+        assertNull(node.get("routeTableV1", null));
+
+        settings.routeTable = null;
+        settings.save();
+        node.node("routeTableV1.map").put("/f", "host7");
+        settings.load();
+        assertEquals("host7", settings.routeTable.get("/f"));
+        assertFalse(node.nodeExists("routeTableV1.map"));
+
+        settings.routeTable = null;
+        settings.save();
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testSnapshotPerEntry() throws Exception {
+
+        Prefs.deleteAllPrefs();
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/large");
+        Preferences sysNode = Preferences.systemRoot().node("/com/terheyden/prefs/large");
+
+        // Snapshots don't create entry or delta log nodes just to watch them:
+        PrefSnapshot<SettingsLarge> snapshot = Prefs.snapshot(SettingsLarge.class);
+        PrefSnapshot<SettingsLarge> layered = Prefs.layered(SettingsLarge.class);
+        assertFalse(node.nodeExists("routeTable.map"));
+        assertFalse(sysNode.nodeExists("routeTable.map"));
+        assertFalse(node.nodeExists("members.log"));
+        assertFalse(sysNode.nodeExists("members.log"));
+
+        // A map still stored as one JSON value is read by layered snapshots:
+        node.put("routeTable", "{\"/a\":\"h1\"}");
+        layered.refresh();
+        assertEquals(Collections.singletonMap("/a", "h1"), layered.get().routeTable);
+
+        // (The plain snapshot's reload may have moved it into the entry node by now.)
+        snapshot.refresh();
+        node.remove("routeTable");
+        node.node("routeTable.map").removeNode();
+
+        // ..and one stored under an old name is moved by plain ones, like a load:
+        node.put("routeTableV1", "{\"/b\":\"h2\"}");
+        snapshot.refresh();
+        assertEquals(Collections.singletonMap("/b", "h2"), snapshot.get().routeTable);
+        assertNull(node.get("routeTableV1", null));
+        assertEquals("h2", node.node("routeTable.map").get("/b", null));
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testNested() throws Exception {
+
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/nested");
+
+        SettingsNested settings = new SettingsNested();
+        settings.theme = "dark";
+        settings.main.width = 800;
+        settings.main.title = "Main";
+        Prefs.save(settings);
+
+        // Inherited fields, and nested objects in child nodes:
+        assertEquals("dark", node.get("theme", null));
+        assertEquals("800", node.node("main").get("width", null));
+        assertFalse(node.nodeExists("popup"));
+
+        settings.popup = new SettingsNested.Window();
+        settings.popup.title = "Popup";
+        Prefs.save(settings);
+
+        SettingsNested loaded = new SettingsNested();
+        Prefs.load(loaded);
+        assertEquals("dark", loaded.theme);
+        assertEquals(800, loaded.main.width);
+        assertEquals("Main", loaded.main.title);
+        assertEquals("Popup", loaded.popup.title);
+
+        // Saving unchanged values writes nothing:
+        List<String> changes = new ArrayList<>();
+        node.node("main").addPreferenceChangeListener(event -> changes.add(event.getKey()));
+        Prefs.save(loaded);
+        loaded.main.title = "Main 2";
+        Prefs.save(loaded);
+        Prefs.flushAllPrefs();
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList("title"), changes);
+
+        // Null nested objects are removed:
+        loaded.popup = null;
+        Prefs.save(loaded);
+        assertFalse(node.nodeExists("popup"));
+
+        // PrefKey finds inherited fields too:
+        assertEquals("dark", PrefKey.<String>of(SettingsNested.class, "theme").get());
+
+        // Nested objects' nodes are deleted too, so they don't come back as empty objects:
+        loaded.popup = new SettingsNested.Window();
+        Prefs.save(loaded);
+        Prefs.deleteAllPrefs();
+        assertFalse(node.nodeExists("main"));
+        assertFalse(node.nodeExists("popup"));
+
+        SettingsNested reloaded = new SettingsNested();
+        Prefs.load(reloaded);
+        assertNull(reloaded.popup);
+        assertNull(reloaded.main.title);
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testInPlace() {
+
+        AppSettings saved = new AppSettings();
+        saved.getCache().add("cache1");
+        saved.getCache().add("cache2");
+        saved.save();
+
+        AppSettings settings = new AppSettings();
+        Set<String> cache = settings.getCache();
+        cache.add("stale");
+        settings.load();
+
+        // Same instance, new contents:
+        assertSame(cache, settings.getCache());
+        assertEquals(new HashSet<>(Arrays.asList("cache1", "cache2")), cache);
+
+        // A malformed value is rejected before the set is cleared, so it keeps what it had:
+        Preferences.userRoot().node("/com/terheyden/prefs").put("cache", "[\"a\",");
+        settings.load();
+        assertSame(cache, settings.getCache());
+        assertEquals(new HashSet<>(Arrays.asList("cache1", "cache2")), cache);
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testSkipUnchanged() {
+
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/cached");
+        node.put("hosts", "[\"a\",\"b\"]");
+        node.put("region", "us");
+
+        SettingsCached settings = new SettingsCached();
+        Prefs.load(settings);
+        List<String> hosts = settings.hosts;
+        assertEquals(Arrays.asList("a", "b"), hosts);
+
+        // Nothing changed, so nothing is decoded or replaced:
+        Prefs.load(settings);
+        assertSame(hosts, settings.hosts);
+
+        // Only the changed field is:
+        node.put("region", "eu");
+        Prefs.load(settings);
+        assertSame(hosts, settings.hosts);
+        assertEquals("eu", settings.region);
+
+        node.put("hosts", "[\"c\"]");
+        Prefs.load(settings);
+        assertEquals(Collections.singletonList("c"), settings.hosts);
+
+        // Our own saves count as loaded:
+        settings.hosts = Arrays.asList("d");
+        Prefs.save(settings);
+        hosts = settings.hosts;
+        Prefs.load(settings);
+        assertSame(hosts, settings.hosts);
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testMultiProcess() throws Exception {
+
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/shared");
+
+        SettingsShared settings = new SettingsShared();
+        Prefs.save(settings);
+        Prefs.load(settings);
+        long stamp = node.getLong("_prefsStamp", 0);
+        assertTrue(stamp > 0);
+
+        // Another process changes the region:
+        node.put("region", "eu");
+        node.putLong("_prefsStamp", stamp + 1);
+
+        // ..so our save keeps it (and picks it up), and only writes what we changed:
+        settings.hosts = Arrays.asList("a");
+        Prefs.save(settings);
+        assertEquals("eu", node.get("region", null));
+        assertEquals("eu", settings.region);
+        assertEquals("[\"a\"]", node.get("hosts", null));
+        assertEquals(stamp + 2, node.getLong("_prefsStamp", 0));
+
+        // Two writers changing different fields don't lose each other's changes:
+        SettingsShared hostWriter = new SettingsShared();
+        SettingsShared regionWriter = new SettingsShared();
+        Prefs.load(hostWriter);
+        Prefs.load(regionWriter);
+
+        Thread thread = new Thread(() -> {
+            for (int i = 0; i < 50; i++) {
+                hostWriter.hosts = Collections.singletonList("host" + i);
+                Prefs.save(hostWriter);
+            }
+        });
+
+        thread.start();
+        for (int i = 0; i < 50; i++) {
+            regionWriter.region = "region" + i;
+            Prefs.save(regionWriter);
+        }
+        thread.join();
+
+        SettingsShared loaded = new SettingsShared();
+        Prefs.load(loaded);
+        assertEquals(Collections.singletonList("host49"), loaded.hosts);
+        assertEquals("region49", loaded.region);
+
+        Prefs.deleteAllPrefs();
+    }
+
+    @Test
+    public void testMultiProcessJvms() throws Exception {
+
+        Preferences node = Preferences.userRoot().node("/com/terheyden/prefs/shared");
+        node.clear();
+        node.flush();
+        int count = 30;
+
+        // Another JVM adds peers while we add hosts, each doing load / add / save:
+        Process other = new ProcessBuilder(
+            new File(System.getProperty("java.home"), "bin/java").getPath(),
+            "-cp", System.getProperty("java.class.path"),
+            SettingsShared.class.getName(), String.valueOf(count))
+            .redirectErrorStream(true)
+            .start();
+
+        BufferedReader otherOut = new BufferedReader(new InputStreamReader(other.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals("ready", otherOut.readLine());
+
+        SettingsShared settings = new SettingsShared();
+        for (int i = 0; i < count; i++) {
+            Prefs.load(settings);
+            List<String> hosts = new ArrayList<>(settings.hosts);
+            hosts.add("host" + i);
+            settings.hosts = hosts;
+            Prefs.save(settings);
+        }
+
+        // Show anything it printed (e.g. a stack trace) if it failed:
+        String line;
+        while ((line = otherOut.readLine()) != null) {
+            System.out.println("other JVM: " + line);
+        }
+
+        assertTrue(other.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, other.exitValue());
+
+        // No one's update was lost:
+        SettingsShared loaded = new SettingsShared();
+        Prefs.load(loaded);
+        assertEquals(count, loaded.hosts.size());
+        assertEquals(count, loaded.peers.size());
+        assertEquals("host" + (count - 1), loaded.hosts.get(count - 1));
+        assertEquals("peer" + (count - 1), loaded.peers.get(count - 1));
+
+        Prefs.deleteAllPrefs();
+    }
+
+    private static void awaitSnapshot(BooleanSupplier isUpdated) throws InterruptedException {
+
+        for (int i = 0; i < 100 && !isUpdated.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(isUpdated.getAsBoolean());
+    }
 }
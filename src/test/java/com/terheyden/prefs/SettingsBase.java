@@ -0,0 +1,10 @@
+package com.terheyden.prefs;
+
+/**
+ * Superclass of {@link SettingsNested}, for testing inherited {@link Pref} fields.
+ */
+public abstract class SettingsBase {
+
+    @Pref
+    public String theme = "light";
+}
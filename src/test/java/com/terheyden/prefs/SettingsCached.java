@@ -0,0 +1,16 @@
+package com.terheyden.prefs;
+
+import java.util.List;
+
+/**
+ * For testing {@link PrefSettings#skipUnchanged()}.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/cached", skipUnchanged = true)
+public class SettingsCached {
+
+    @Pref
+    public List<String> hosts;
+
+    @Pref
+    public String region;
+}
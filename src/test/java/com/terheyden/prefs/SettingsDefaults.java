@@ -0,0 +1,13 @@
+package com.terheyden.prefs;
+
+import java.util.ArrayList;
+
+/**
+ * For testing {@link PrefKey} defaults.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/defaults")
+public class SettingsDefaults {
+
+    @Pref(defaultVal = "[]")
+    public ArrayList<String> names;
+}
@@ -0,0 +1,46 @@
+package com.terheyden.prefs;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * For testing {@link Prefs} with big collections.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/large")
+public class SettingsLarge {
+
+    @Pref(offHeap = true)
+    public Set<String> tags = SortedStringSet.EMPTY;
+
+    @Pref(offHeap = true)
+    public Map<String, String> routes = SortedStringMap.EMPTY;
+
+    @Pref(deltaLog = true)
+    public Set<String> members = new HashSet<>();
+
+    @Pref(deltaLog = true)
+    public Map<String, String> owners = new HashMap<>();
+
+    @Pref(maxEntries = 3)
+    public Set<String> recent = new LinkedHashSet<>();
+
+    @Pref(maxEntries = 2, eviction = Eviction.LRU)
+    public Map<String, String> lru = new HashMap<>();
+
+    @Pref(eviction = Eviction.TTL, ttlMillis = 60000)
+    public Set<String> expiring = new HashSet<>();
+
+    @Pref(perEntry = true, oldNames = "routeTableV1")
+    public Map<String, String> routeTable = new HashMap<>();
+
+    public void save() {
+        Prefs.save(this);
+    }
+
+    public void load() {
+        Prefs.load(this);
+    }
+}
@@ -0,0 +1,24 @@
+package com.terheyden.prefs;
+
+/**
+ * For testing {@link Prefs} with inherited fields, and nested objects stored in child nodes.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/nested")
+public class SettingsNested extends SettingsBase {
+
+    @Pref
+    public Window main = new Window();
+
+    // Null until something has been saved for it.
+    @Pref
+    public Window popup;
+
+    public static class Window {
+
+        @Pref(defaultVal = "640")
+        public int width;
+
+        @Pref
+        public String title;
+    }
+}
@@ -0,0 +1,12 @@
+package com.terheyden.prefs;
+
+/**
+ * For testing {@link Pref#oldNames()} on a class with no {@link PrefSettings#version()}.
+ * "userName" used to be stored as "login".
+ */
+@PrefSettings(path = "/com/terheyden/prefs/renamed")
+public class SettingsRenamed {
+
+    @Pref(oldNames = "login")
+    public String userName;
+}
@@ -0,0 +1,41 @@
+package com.terheyden.prefs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * For testing {@link PrefSettings#multiProcess()}.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/shared", multiProcess = true)
+public class SettingsShared {
+
+    @Pref
+    public List<String> hosts = new ArrayList<>();
+
+    @Pref
+    public String region = "us";
+
+    @Pref
+    public List<String> peers = new ArrayList<>();
+
+    /**
+     * The other process in PrefsTest.testMultiProcessJvms - adds peers, one load / add / save at a time.
+     * @param args how many to add
+     */
+    public static void main(String[] args) {
+
+        int count = Integer.parseInt(args[0]);
+        SettingsShared settings = new SettingsShared();
+
+        System.out.println("ready");
+        System.out.flush();
+
+        for (int i = 0; i < count; i++) {
+            Prefs.load(settings);
+            List<String> peers = new ArrayList<>(settings.peers);
+            peers.add("peer" + i);
+            settings.peers = peers;
+            Prefs.save(settings);
+        }
+    }
+}
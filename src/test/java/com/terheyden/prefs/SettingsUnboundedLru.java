@@ -0,0 +1,14 @@
+package com.terheyden.prefs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * For testing that LRU eviction without a maxEntries is rejected.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/unboundedLru")
+public class SettingsUnboundedLru {
+
+    @Pref(eviction = Eviction.LRU)
+    public Map<String, String> lru = new HashMap<>();
+}
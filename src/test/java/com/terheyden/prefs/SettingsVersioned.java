@@ -0,0 +1,36 @@
+package com.terheyden.prefs;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * For testing {@link Prefs} schema versions.
+ * Version 1 stored "lastDirUsed", and "tags" as a comma-separated String.
+ */
+@PrefSettings(path = "/com/terheyden/prefs/versioned", version = 2)
+public class SettingsVersioned {
+
+    @Pref(oldNames = "lastDirUsed")
+    public String lastDir;
+
+    @Pref(migration = CsvToJson.class)
+    public ArrayList<String> tags = new ArrayList<>();
+
+    public static class CsvToJson implements PrefMigration {
+
+        @Override
+        public String migrate(String storedVal, int storedVersion) {
+            return storedVersion < 2 ? new Gson().toJson(Arrays.asList(storedVal.split(","))) : storedVal;
+        }
+    }
+
+    public void save() {
+        Prefs.save(this);
+    }
+
+    public void load() {
+        Prefs.load(this);
+    }
+}